@@ -0,0 +1,112 @@
+package nio;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel evaluation of an expression as a composition of affine maps.
+ * <p>
+ * Every step {@code result = result op unary(x)} with op in {+, -, *, /} is an affine map
+ * {@code result -> a * result + b}, so each range of steps is reduced independently to (a, b)
+ * and the ranges are composed in order.
+ * <p>
+ * Tolerance: reassociation changes rounding only. The difference from the sequential fold is at most
+ * about {@code n * 2^-53} relative to the largest magnitude of the accumulator (and of b) along the fold,
+ * which for n up to 10^6 stays below {@link #RELATIVE_TOLERANCE}. Expressions whose result is much
+ * smaller than their intermediate values (cancellation) get the same absolute error, not the same
+ * relative one. If a coefficient becomes infinite or NaN (division by zero, overflow) the caller must
+ * fall back to the sequential fold.
+ */
+@SuppressWarnings("serial")
+public class AffineReduction extends RecursiveTask<double[]> {
+
+    public static final double RELATIVE_TOLERANCE = 1e-9;
+
+    private final OperandBuffer operands;
+    private final int from;
+    private final int to;
+    private final int chunkSize;
+
+    private AffineReduction(OperandBuffer operands, int from, int to, int chunkSize) {
+        this.operands = operands;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the value of the expression, or null if it can't be evaluated as affine maps
+     * and has to go through the sequential fold.
+     */
+    public static Double calculate(OperandBuffer operands, ForkJoinPool pool, int chunkSize) {
+        if (pool == null) {
+            throw new NullPointerException();
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (operands.size() < 2) {
+            return null;
+        }
+        double[] map = pool.invoke(new AffineReduction(operands, 1, operands.size(), chunkSize));
+        if (map == null) {
+            return null;
+        }
+        double result = map[0] * OperandsParser.calculateUnaryPart(operands.getOperationFirst(0), operands.getValue(0)) + map[1];
+        if (!operands.getOperationSecond(operands.size() - 1).equals(OperandType.EQUALS)) {
+            return Double.NaN;
+        }
+        return result;
+    }
+
+    @Override
+    protected double[] compute() {
+        if (to - from <= chunkSize) {
+            return reduce();
+        }
+        int middle = (from + to) >>> 1;
+        AffineReduction left = new AffineReduction(operands, from, middle, chunkSize);
+        AffineReduction right = new AffineReduction(operands, middle, to, chunkSize);
+        left.fork();
+        double[] rightMap = right.compute();
+        double[] leftMap = left.join();
+        if (leftMap == null || rightMap == null) {
+            return null;
+        }
+        return checked(rightMap[0] * leftMap[0], rightMap[0] * leftMap[1] + rightMap[1]);
+    }
+
+    private double[] reduce() {
+        double a = 1;
+        double b = 0;
+        for (int i = from; i < to; i++) {
+            double value = OperandsParser.calculateUnaryPart(operands.getOperationFirst(i), operands.getValue(i));
+            switch (operands.getOperationSecond(i - 1)) {
+                case PLUS:
+                    b += value;
+                    break;
+                case MINUS:
+                    b -= value;
+                    break;
+                case MULT:
+                    a *= value;
+                    b *= value;
+                    break;
+                case DIVIDE:
+                    a /= value;
+                    b /= value;
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return checked(a, b);
+    }
+
+    private static double[] checked(double a, double b) {
+        if (!Double.isFinite(a) || !Double.isFinite(b)) {
+            return null;
+        }
+        return new double[]{a, b};
+    }
+}
@@ -0,0 +1,146 @@
+package nio;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The answer stage: a bounded queue of ready answers drained in batches by the answer thread, which waits
+ * for the first one, takes whatever else is queued and optionally lingers a little for more until the batch
+ * is full. Submitting to a full queue parks with a bounded backoff like {@link PipelineStage#submit(Object)},
+ * so a slow answer port pushes back on evaluation instead of growing the queue.
+ */
+public class AnswerBatcher<T> {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MIN_FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final StageQueue<T> queue;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong answers = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private volatile Thread waiter;
+    private volatile boolean running = true;
+
+    public AnswerBatcher(StageQueue<T> queue, int maxBatchSize, long maxLingerMicros) {
+        if (queue == null) {
+            throw new NullPointerException();
+        }
+        if (maxBatchSize <= 0 || maxLingerMicros < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.queue = queue;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+    }
+
+    public void submit(T answer) {
+        long parkNanos = MIN_FULL_PARK_NANOS;
+        while (!trySubmit(answer)) {
+            if (!running) {
+                return;
+            }
+            LockSupport.parkNanos(this, parkNanos);
+            parkNanos = Math.min(parkNanos * 2, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Submits without waiting; returns false, counting a rejection, when the queue is full.
+     */
+    public boolean trySubmit(T answer) {
+        if (!queue.offer(answer)) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        int depth = queue.size();
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    public void close() {
+        running = false;
+    }
+
+    public void nextBatch(List<T> batch) throws InterruptedException {
+        T answer;
+        while ((answer = poll(Long.MAX_VALUE)) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        batch.add(answer);
+        drain(batch);
+        if (maxLingerNanos > 0) {
+            long deadline = System.nanoTime() + maxLingerNanos;
+            while (batch.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                T next = poll(remaining);
+                if (next == null) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    continue;
+                }
+                batch.add(next);
+                drain(batch);
+            }
+        }
+        batches.incrementAndGet();
+        answers.addAndGet(batch.size());
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getAnswers() {
+        return answers.get();
+    }
+
+    public PipelineStage.Metrics getMetrics() {
+        return new PipelineStage.Metrics("answer", 1, queue.size(), maxQueueDepth.get(), answers.get(), rejected.get());
+    }
+
+    /**
+     * Takes an answer, parking for at most {@code maxParkNanos} and no longer than the idle park when there is none.
+     */
+    private T poll(long maxParkNanos) {
+        T answer = queue.poll();
+        if (answer != null) {
+            return answer;
+        }
+        waiter = Thread.currentThread();
+        answer = queue.poll();
+        if (answer == null) {
+            LockSupport.parkNanos(this, Math.min(maxParkNanos, IDLE_PARK_NANOS));
+        }
+        waiter = null;
+        return answer;
+    }
+
+    private void drain(List<T> batch) {
+        T answer;
+        while (batch.size() < maxBatchSize && (answer = queue.poll()) != null) {
+            batch.add(answer);
+        }
+    }
+}
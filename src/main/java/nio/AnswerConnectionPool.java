@@ -0,0 +1,182 @@
+package nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived answer connections keyed by the client answer port.
+ * A failed write is retried once on a fresh connection, idle connections are closed by a timer.
+ */
+public class AnswerConnectionPool {
+
+    private final Map<Integer, PooledConnection> connections = new ConcurrentHashMap<>();
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService idleConnectionsCloser;
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong reconnected = new AtomicLong();
+    private final AtomicLong closedIdle = new AtomicLong();
+
+    public AnswerConnectionPool(long idleTimeoutMillis) {
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        idleConnectionsCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "answer-connections-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        idleConnectionsCloser.scheduleAtFixedRate(this::closeIdleConnections, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void write(int port, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (true) {
+            PooledConnection connection = connections.computeIfAbsent(port, PooledConnection::new);
+            synchronized (connection) {
+                if (connection.closed) {
+                    continue;
+                }
+                boolean fresh = connection.channel == null;
+                if (fresh) {
+                    connection.open();
+                    opened.incrementAndGet();
+                } else {
+                    reused.incrementAndGet();
+                }
+                try {
+                    Frames.write(connection.channel, buffer);
+                } catch (IOException e) {
+                    if (fresh) {
+                        connection.closeChannel();
+                        throw e;
+                    }
+                    buffer.position(start);
+                    connection.closeChannel();
+                    connection.open();
+                    reconnected.incrementAndGet();
+                    try {
+                        Frames.write(connection.channel, buffer);
+                    } catch (IOException again) {
+                        connection.closeChannel();
+                        throw again;
+                    }
+                }
+                connection.lastUsedNanos = System.nanoTime();
+                return;
+            }
+        }
+    }
+
+    public void release(int port) {
+        PooledConnection connection = connections.remove(port);
+        if (connection != null) {
+            synchronized (connection) {
+                connection.closed = true;
+                connection.closeChannel();
+            }
+        }
+    }
+
+    public void close() {
+        idleConnectionsCloser.shutdownNow();
+        for (Integer port : connections.keySet()) {
+            release(port);
+        }
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(connections.size(), opened.get(), reused.get(), reconnected.get(), closedIdle.get());
+    }
+
+    private void closeIdleConnections() {
+        long now = System.nanoTime();
+        for (PooledConnection connection : connections.values()) {
+            synchronized (connection) {
+                if (!connection.closed && now - connection.lastUsedNanos > idleTimeoutNanos) {
+                    connection.closed = true;
+                    connection.closeChannel();
+                    connections.remove(connection.port, connection);
+                    closedIdle.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static class PooledConnection {
+        private final int port;
+        private SocketChannel channel;
+        private boolean closed = false;
+        private long lastUsedNanos = System.nanoTime();
+
+        PooledConnection(int port) {
+            this.port = port;
+        }
+
+        void open() throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+        }
+
+        void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+            }
+        }
+    }
+
+    public static class Metrics {
+        private final int openConnections;
+        private final long opened;
+        private final long reused;
+        private final long reconnected;
+        private final long closedIdle;
+
+        public Metrics(int openConnections, long opened, long reused, long reconnected, long closedIdle) {
+            this.openConnections = openConnections;
+            this.opened = opened;
+            this.reused = reused;
+            this.reconnected = reconnected;
+            this.closedIdle = closedIdle;
+        }
+
+        public int getOpenConnections() {
+            return openConnections;
+        }
+
+        public long getOpened() {
+            return opened;
+        }
+
+        public long getReused() {
+            return reused;
+        }
+
+        public long getReconnected() {
+            return reconnected;
+        }
+
+        public long getClosedIdle() {
+            return closedIdle;
+        }
+
+        @Override
+        public String toString() {
+            return "open=" + openConnections + " opened=" + opened + " reused=" + reused
+                    + " reconnected=" + reconnected + " closedIdle=" + closedIdle;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width operand encoding: first operation ordinal, value, second operation ordinal.
+ */
+public class BinaryOperandCodec implements OperandCodec {
+
+    public static final int OPERAND_BYTES = Byte.BYTES + Double.BYTES + Byte.BYTES;
+
+    private static final OperandType[] OPERAND_TYPES = OperandType.values();
+
+    @Override
+    public int encodedSize(Operand operand) {
+        return OPERAND_BYTES;
+    }
+
+    @Override
+    public void encode(Operand operand, ByteBuffer buffer) {
+        buffer.put((byte) operand.getOperationFirst().ordinal());
+        buffer.putDouble(operand.getA());
+        buffer.put((byte) operand.getOperationSecond().ordinal());
+    }
+
+    @Override
+    public Operand decode(ByteBuffer buffer) {
+        OperandType operationFirst = OPERAND_TYPES[buffer.get()];
+        double a = buffer.getDouble();
+        OperandType operationSecond = OPERAND_TYPES[buffer.get()];
+        return new Operand(operationFirst, a, operationSecond);
+    }
+
+    @Override
+    public void decode(ByteBuffer buffer, OperandBuffer target) {
+        OperandType operationFirst = OPERAND_TYPES[buffer.get()];
+        double a = buffer.getDouble();
+        OperandType operationSecond = OPERAND_TYPES[buffer.get()];
+        target.add(operationFirst, a, operationSecond);
+    }
+}
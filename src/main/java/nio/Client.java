@@ -11,8 +11,7 @@ import java.nio.channels.SocketChannel;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-
-import static nio.ObjectSerializer.serialize;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class Client {
@@ -21,8 +20,16 @@ public class Client {
     private static final int BUFFER_SIZE = 1536;
     private static final int META_DATA_REQUEST_CODE = 0;
     private static final int CALCULATING_REQUEST_CODE = 1;
+    private static final int BATCH_REQUEST_CODE = 2;
     private static final int CANCELLING_REQUEST_CODE = -1;
     private static final int CLOSE_CLIENT_REQUEST_CODE = -2;
+    private static final int BIDIRECTIONAL_SERVER_PORT = 0;
+    private static final int CALCULATING_FRAME_HEADER_BYTES = Frames.HEADER_BYTES + 5 * Integer.BYTES;
+    private static final int BATCH_BUFFER_SIZE = 8192;
+    private static final int BATCH_FRAME_HEADER_BYTES = Frames.HEADER_BYTES + 5 * Integer.BYTES;
+    private static final int BATCH_EXPRESSION_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int TIMEOUT_WHEEL_TICKS = 512;
+    private static final long NO_DEADLINE = 0;
 
     private static final AtomicInteger resultIdCounter = new AtomicInteger(1);
     private static final AtomicInteger clientIdCounter = new AtomicInteger(1);
@@ -30,6 +37,18 @@ public class Client {
     private final CountDownLatch closeClientCountDown = new CountDownLatch(1);
     private final Map<Integer, Result> resultMap = new ConcurrentHashMap<>();
     private final List<SocketChannel> sendingChannels = new CopyOnWriteArrayList<>();
+    private final Map<SocketChannel, Selector> writeSelectors = new ConcurrentHashMap<>();
+    private final AtomicInteger nextBatchChannel = new AtomicInteger();
+    private final OperandCodec operandCodec;
+    private final int autoBatchMaxOperands;
+    private final Executor callbackExecutor;
+    private final long resultTimeoutMillis;
+    private final boolean cancelOnTimeout;
+    private final long timeoutTickMillis;
+    private final AtomicLong timedOutResults = new AtomicLong();
+    private volatile HashedWheelTimer resultTimer;
+    private RequestBatcher<PendingExpression> requestBatcher;
+    private Thread batchSendingThread;
     private int[] clientsPort;
     private int serverPort;
     private int threadsCountForSend;
@@ -37,6 +56,30 @@ public class Client {
     private volatile boolean isClosed = false;
 
     public Client(int[] clientsPort, int serverPort, int threadsCountForSend) {
+        this(clientsPort, serverPort, threadsCountForSend, new ClientConfig());
+    }
+
+    /**
+     * Creates a client without its own answer listener: answers come back on the sending connections.
+     */
+    public Client(int[] clientsPort, int threadsCountForSend) {
+        this(clientsPort, BIDIRECTIONAL_SERVER_PORT, threadsCountForSend, new ClientConfig());
+    }
+
+    public Client(int[] clientsPort, int threadsCountForSend, ClientConfig config) {
+        this(clientsPort, BIDIRECTIONAL_SERVER_PORT, threadsCountForSend, config);
+    }
+
+    public Client(int[] clientsPort, int serverPort, int threadsCountForSend, ClientConfig config) {
+        if (config == null) {
+            throw new NullPointerException();
+        }
+        operandCodec = config.getOperandCodec();
+        autoBatchMaxOperands = config.getAutoBatchMaxOperands();
+        callbackExecutor = config.getCallbackExecutor();
+        resultTimeoutMillis = config.getResultTimeoutMillis();
+        cancelOnTimeout = config.isCancelOnTimeout();
+        timeoutTickMillis = config.getTimeoutTickMillis();
         try {
             if (clientsPort == null) {
                 throw new NullPointerException();
@@ -54,24 +97,49 @@ public class Client {
             this.serverPort = serverPort;
             this.threadsCountForSend = threadsCountForSend;
             for (int port : clientsPort) {
-                sendingChannels.add(SocketChannel.open(new InetSocketAddress("localhost", port)));
+                SocketChannel sendingChannel = SocketChannel.open(new InetSocketAddress("localhost", port));
+                if (isBidirectional()) {
+                    sendingChannel.configureBlocking(false);
+                    writeSelectors.put(sendingChannel, Selector.open());
+                }
+                sendingChannels.add(sendingChannel);
             }
             executor = Executors.newFixedThreadPool(threadsCountForSend);
-            Thread resultGettingThread = createResultGettingThread(serverPort);
+            ServerSocketChannel receivingChannel = null;
+            if (!isBidirectional()) {
+                receivingChannel = ServerSocketChannel.open();
+                receivingChannel.bind(new InetSocketAddress("localhost", serverPort));
+                receivingChannel.configureBlocking(false);
+            }
+            Thread resultGettingThread = createResultGettingThread(receivingChannel);
             resultGettingThread.start();
+            if (resultTimeoutMillis > 0) {
+                resultTimer();
+            }
+            if (autoBatchMaxOperands > 0) {
+                requestBatcher = new RequestBatcher<>(config.getBatchMaxBytes(), config.getBatchLingerMicros(), pending -> pending.bytes);
+                batchSendingThread = createBatchSendingThread();
+                batchSendingThread.start();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private Thread createResultGettingThread(int serverPort) {
+    /**
+     * The answer port is bound by the constructor, before any request goes out,
+     * so the server never dials it before it listens.
+     */
+    private Thread createResultGettingThread(ServerSocketChannel receivingChannel) {
         return new Thread(() -> {
-            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
             try (Selector selector = Selector.open()) {
-                ServerSocketChannel receivingChannel = ServerSocketChannel.open();
-                receivingChannel.bind(new InetSocketAddress("localhost", serverPort));
-                receivingChannel.configureBlocking(false);
-                receivingChannel.register(selector, SelectionKey.OP_ACCEPT);
+                if (receivingChannel == null) {
+                    for (SocketChannel sendingChannel : sendingChannels) {
+                        sendingChannel.register(selector, SelectionKey.OP_READ, new FrameDecoder());
+                    }
+                } else {
+                    receivingChannel.register(selector, SelectionKey.OP_ACCEPT);
+                }
                 while (!isClosed) {
                     selector.select();
                     Set<SelectionKey> selectionKeys = selector.selectedKeys();
@@ -82,75 +150,161 @@ public class Client {
                             register(selector, receivingChannel);
                         }
                         if (key.isReadable()) {
-                            getAnswer(buffer, key);
+                            getAnswer(key);
                         }
                         iter.remove();
                     }
                 }
-                receivingChannel.close();
-            } catch (IOException | ClassNotFoundException e) {
+                if (receivingChannel != null) {
+                    receivingChannel.close();
+                } else {
+                    for (SocketChannel sendingChannel : sendingChannels) {
+                        sendingChannel.close();
+                        writeSelectors.get(sendingChannel).close();
+                    }
+                }
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         });
     }
 
+    private Thread createBatchSendingThread() {
+        Thread thread = new Thread(() -> {
+            List<PendingExpression> batch = new ArrayList<>();
+            try {
+                while (!isClosed) {
+                    requestBatcher.nextBatch(batch);
+                    sendPendingExpressions(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                if (!isClosed) {
+                    e.printStackTrace();
+                }
+                Thread.currentThread().interrupt();
+            }
+        }, "client-" + clientId + "-batch-sender");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void sendPendingExpressions(List<PendingExpression> batch) {
+        for (PrecisionMode precisionMode : PrecisionMode.values()) {
+            List<List<Operand>> expressions = new ArrayList<>(batch.size());
+            List<Result> results = new ArrayList<>(batch.size());
+            for (PendingExpression pending : batch) {
+                if (pending.precisionMode == precisionMode) {
+                    expressions.add(pending.operands);
+                    results.add(pending.result);
+                }
+            }
+            if (results.isEmpty()) {
+                continue;
+            }
+            try {
+                sendBatchWithChannel(nextBatchChannel(), expressions, results, precisionMode);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private void register(Selector selector, ServerSocketChannel serverSocket) throws IOException {
         SocketChannel client = serverSocket.accept();
         client.configureBlocking(false);
-        client.register(selector, SelectionKey.OP_READ);
+        client.register(selector, SelectionKey.OP_READ, new FrameDecoder());
     }
 
-    private void getAnswer(ByteBuffer buffer, SelectionKey key) throws IOException, ClassNotFoundException {
+    private void getAnswer(SelectionKey key) throws IOException {
         SocketChannel receivingClient = (SocketChannel) key.channel();
-        receivingClient.read(buffer);
-        buffer.flip();
+        FrameDecoder frameDecoder = (FrameDecoder) key.attachment();
+        int read;
+        try {
+            read = frameDecoder.read(receivingClient);
+        } catch (IOException e) {
+            read = -1;
+        }
+        ByteBuffer frame;
+        while ((frame = frameDecoder.nextFrame()) != null) {
+            processAnswerFrame(frame);
+        }
+        if (read < 0) {
+            key.cancel();
+            receivingClient.close();
+        }
+    }
+
+    private void processAnswerFrame(ByteBuffer buffer) {
         int responseCode = buffer.getInt();
         if (responseCode == CLOSE_CLIENT_REQUEST_CODE) {
             isClosed = true;
-            buffer.flip();
-            buffer.clear();
             closeClientCountDown.countDown();
             return;
         }
+        if (responseCode == BATCH_REQUEST_CODE) {
+            int answersCount = buffer.getInt();
+            for (int i = 0; i < answersCount; i++) {
+                completeResult(buffer.getInt(), buffer.getDouble());
+            }
+            return;
+        }
         int resultId = buffer.getInt();
+        completeResult(resultId, buffer.getDouble());
+    }
+
+    private void completeResult(int resultId, double resultValue) {
         if (resultId < 1) {
             throw new RuntimeException("Id cannot be < 1");
         }
         Result result = resultMap.get(resultId);
+        if (result == null) {
+            return;
+        }
         result.setState(ClientState.RECEIVING);
-        double resultValue = buffer.getDouble();
         result.set(resultValue);
         result.setState(ClientState.DONE);
-        synchronized (result) {
-            if (result.isWaiting()) {
-                result.notify();
-            }
-        }
-        buffer.flip();
-        buffer.clear();
     }
 
 
     public Result calculate(List<Operand> operands) {
-        if (operands == null) {
+        return calculate(operands, PrecisionMode.EXACT);
+    }
+
+    /**
+     * Same as {@link #calculate(List)}; {@link PrecisionMode#FAST} lets the server use the approximations of {@link FastMath}.
+     * Expressions of at most {@link ClientConfig#getAutoBatchMaxOperands()} operands are queued and sent together
+     * with other pending calls in one batch frame, see {@link #calculateAll(List, PrecisionMode)}; like a chunked
+     * expression, such a result is SENT once it is queued for sending.
+     */
+    public Result calculate(List<Operand> operands, PrecisionMode precisionMode) {
+        if (operands == null || precisionMode == null) {
             throw new NullPointerException();
         }
         if (!operands.get(operands.size()-1).getOperationSecond().equals(OperandType.EQUALS)) {
             throw new IllegalArgumentException();
         }
+        if (requestBatcher != null && operands.size() <= autoBatchMaxOperands) {
+            int bytes = expressionBytes(operands);
+            if (bytes <= requestBatcher.getMaxBatchBytes()) {
+                Result calculatingResult = registerResult();
+                calculatingResult.setState(ClientState.SENDING);
+                requestBatcher.add(new PendingExpression(operands, calculatingResult, precisionMode, bytes));
+                calculatingResult.setState(ClientState.SENT);
+                return calculatingResult;
+            }
+        }
         int maxThreadsCanUsed = Math.min(operands.size(), threadsCountForSend);
-        int resultId = resultIdCounter.getAndIncrement();
-        Result calculatingResult = new Result(resultId);
-        calculatingResult.setClient(this);
-        calculatingResult.setState(ClientState.START);
-        resultMap.put(resultId, calculatingResult);
+        Result calculatingResult = registerResult();
+        int resultId = calculatingResult.getId();
         int oneChannelOperandsNumber = operands.size() / maxThreadsCanUsed;
         int leastChannelOperandsNumber = oneChannelOperandsNumber + operands.size() % maxThreadsCanUsed;
         Runnable runnable1 = () -> {
             List<Operand> list = operands.subList(0, leastChannelOperandsNumber);
             try {
                 resultMap.get(resultId).setState(ClientState.SENDING);
-                sendMetaDataWithChannel(sendingChannels.get(0), resultId, serverPort, operands.size());
+                int[] chunksPerOrder = countChunksPerOrder(operands, maxThreadsCanUsed, leastChannelOperandsNumber, oneChannelOperandsNumber);
+                sendMetaDataWithChannel(sendingChannels.get(0), resultId, serverPort, operands.size(), precisionMode, NO_DEADLINE, chunksPerOrder);
                 sendWithChannel(sendingChannels.get(0), resultId, list, 1);
             } catch (IOException e) {
                 e.printStackTrace();
@@ -174,6 +328,159 @@ public class Client {
         return calculatingResult;
     }
 
+    public CompletableFuture<Double> calculateAsync(List<Operand> operands) {
+        return calculateAsync(operands, PrecisionMode.EXACT);
+    }
+
+    /**
+     * Same as {@link #calculate(List, PrecisionMode)}, but nothing has to wait on the result: the future is completed
+     * when the answer arrives, on the executor of {@link ClientConfig#setCallbackExecutor(Executor)}, so callbacks
+     * registered before that run there. It is cancelled if the result is cancelled or the client is closed first.
+     */
+    public CompletableFuture<Double> calculateAsync(List<Operand> operands, PrecisionMode precisionMode) {
+        return calculate(operands, precisionMode).toCompletableFuture(callbackExecutor);
+    }
+
+    public List<Result> calculateAll(List<List<Operand>> expressions) {
+        return calculateAll(expressions, PrecisionMode.EXACT);
+    }
+
+    /**
+     * Sends many expressions packed into shared batch frames, so each small expression costs a few bytes of framing
+     * instead of its own metadata and operand frames. The server answers every batch frame with one batched frame.
+     * Results come back in the order of the expressions; an expression too large for a batch frame is sent
+     * as by {@link #calculate(List, PrecisionMode)}.
+     */
+    public List<Result> calculateAll(List<List<Operand>> expressions, PrecisionMode precisionMode) {
+        if (expressions == null || precisionMode == null) {
+            throw new NullPointerException();
+        }
+        for (List<Operand> operands : expressions) {
+            if (operands == null) {
+                throw new NullPointerException();
+            }
+            if (operands.isEmpty() || !operands.get(operands.size()-1).getOperationSecond().equals(OperandType.EQUALS)) {
+                throw new IllegalArgumentException();
+            }
+        }
+        List<Result> results = new ArrayList<>(expressions.size());
+        List<List<Operand>> batchExpressions = new ArrayList<>();
+        List<Result> batchResults = new ArrayList<>();
+        int batchBytes = BATCH_FRAME_HEADER_BYTES;
+        for (List<Operand> operands : expressions) {
+            int expressionBytes = expressionBytes(operands);
+            if (BATCH_FRAME_HEADER_BYTES + expressionBytes > BATCH_BUFFER_SIZE) {
+                results.add(calculate(operands, precisionMode));
+                continue;
+            }
+            if (batchBytes + expressionBytes > BATCH_BUFFER_SIZE) {
+                sendBatch(batchExpressions, batchResults, precisionMode);
+                batchExpressions = new ArrayList<>();
+                batchResults = new ArrayList<>();
+                batchBytes = BATCH_FRAME_HEADER_BYTES;
+            }
+            Result calculatingResult = registerResult();
+            batchExpressions.add(operands);
+            batchResults.add(calculatingResult);
+            batchBytes += expressionBytes;
+            results.add(calculatingResult);
+        }
+        if (!batchExpressions.isEmpty()) {
+            sendBatch(batchExpressions, batchResults, precisionMode);
+        }
+        return results;
+    }
+
+    private int expressionBytes(List<Operand> operands) {
+        int bytes = BATCH_EXPRESSION_HEADER_BYTES;
+        for (Operand operand : operands) {
+            bytes += operandCodec.encodedSize(operand);
+        }
+        return bytes;
+    }
+
+    private Result registerResult() {
+        return registerResult(resultTimeoutMillis);
+    }
+
+    private Result registerResult(long timeoutMillis) {
+        int resultId = resultIdCounter.getAndIncrement();
+        Result calculatingResult = new Result(resultId);
+        calculatingResult.setClient(this);
+        calculatingResult.setState(ClientState.START);
+        resultMap.put(resultId, calculatingResult);
+        if (timeoutMillis > 0) {
+            calculatingResult.setTimeout(resultTimer().newTimeout(() -> expire(calculatingResult), timeoutMillis, TimeUnit.MILLISECONDS));
+        }
+        return calculatingResult;
+    }
+
+    /**
+     * The timer is started by the first result that needs it.
+     */
+    private HashedWheelTimer resultTimer() {
+        HashedWheelTimer timer = resultTimer;
+        if (timer == null) {
+            synchronized (resultMap) {
+                timer = resultTimer;
+                if (timer == null) {
+                    timer = new HashedWheelTimer("client-" + clientId + "-result-timer", timeoutTickMillis, TIMEOUT_WHEEL_TICKS);
+                    resultTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Runs on the timer thread, so the cancel frame is written by the sending executor.
+     * The result leaves the map before its waiters are woken up, so they never see it there.
+     * A timeout already firing when the client closes finds the executor shut down and sends nothing.
+     */
+    private void expire(Result result) {
+        if (result.isDone() || !resultMap.remove(result.getId(), result)) {
+            return;
+        }
+        if (!result.timeOut()) {
+            resultMap.putIfAbsent(result.getId(), result);
+            return;
+        }
+        timedOutResults.incrementAndGet();
+        if (cancelOnTimeout && !isClosed) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        sendCancelRequest(result.getId());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            } catch (RejectedExecutionException ignored) {
+            }
+        }
+    }
+
+    private void sendBatch(List<List<Operand>> expressions, List<Result> results, PrecisionMode precisionMode) {
+        SocketChannel sendingChannel = nextBatchChannel();
+        executor.execute(() -> {
+            try {
+                results.forEach(result -> result.setState(ClientState.SENDING));
+                sendBatchWithChannel(sendingChannel, expressions, results, precisionMode);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        results.forEach(result -> result.setState(ClientState.SENT));
+    }
+
+    private SocketChannel nextBatchChannel() {
+        return sendingChannels.get(Math.floorMod(nextBatchChannel.getAndIncrement(), sendingChannels.size()));
+    }
+
+    /**
+     * The server learns the deadline from the metadata frame and drops the calculation once it has passed;
+     * the result times out then as well, see {@link ClientState#TIMEOUT}.
+     */
     public Result calculateWithDeadline(List<Operand> operands, long millis) {
         long m = System.currentTimeMillis();
         if (operands == null) {
@@ -182,12 +489,13 @@ public class Client {
         if (!operands.get(operands.size()-1).getOperationSecond().equals(OperandType.EQUALS)) {
             throw new IllegalArgumentException();
         }
+        if (millis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        long deadline = m + millis;
         int maxThreadsCanUsed = Math.min(operands.size(), threadsCountForSend);
-        int resultId = resultIdCounter.getAndIncrement();
-        Result calculatingResult = new Result(resultId);
-        calculatingResult.setClient(this);
-        calculatingResult.setState(ClientState.START);
-        resultMap.put(resultId, calculatingResult);
+        Result calculatingResult = registerResult(resultTimeoutMillis > 0 ? Math.min(resultTimeoutMillis, millis) : millis);
+        int resultId = calculatingResult.getId();
         long result = System.currentTimeMillis() - m;
         if(result > millis) {
             throw new RuntimeException("Exceeded the time limit for calculations");
@@ -198,7 +506,9 @@ public class Client {
             List<Operand> list = operands.subList(0, leastChannelOperandsNumber);
             try {
                 resultMap.get(resultId).setState(ClientState.SENDING);
-                sendMetaDataWithChannel(sendingChannels.get(0), resultId, serverPort, operands.size());
+                int[] chunksPerOrder = countChunksPerOrder(operands, maxThreadsCanUsed, leastChannelOperandsNumber, oneChannelOperandsNumber);
+                long remainingMillis = Math.max(1, deadline - System.currentTimeMillis());
+                sendMetaDataWithChannel(sendingChannels.get(0), resultId, serverPort, operands.size(), PrecisionMode.EXACT, remainingMillis, chunksPerOrder);
                 sendWithChannel(sendingChannels.get(0), resultId, list, 1);
             } catch (IOException e) {
                 e.printStackTrace();
@@ -238,86 +548,133 @@ public class Client {
         Result result = resultMap.get(id);
         if (!result.getState().equals(ClientState.DONE)) {
             result.setState(ClientState.CANCELLING);
-            int sendingChannelIndex = (int) (Math.random() * sendingChannels.size());
-            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-            buffer.putInt(CANCELLING_REQUEST_CODE);
-            buffer.putInt(id);
-            buffer.rewind();
-            sendingChannels.get(sendingChannelIndex).write(buffer);
-            buffer.clear();
+            sendCancelRequest(id);
         }
         if (!result.getState().equals(ClientState.DONE)) {
             result.setState(ClientState.CANCEL);
-        } else {
-            result.setState(ClientState.DONE);
-            synchronized (result) {
-                if (result.isWaiting()) {
-                    result.notify();
-                }
-            }
         }
     }
 
-    private void sendMetaDataWithChannel(SocketChannel sendingChannel, int resultId, int serverPort, int totalOperands) throws IOException {
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private void sendCancelRequest(int id) throws IOException {
+        int sendingChannelIndex = (int) (Math.random() * sendingChannels.size());
+        ByteBuffer buffer = Frames.begin(ByteBuffer.allocate(BUFFER_SIZE));
+        buffer.putInt(CANCELLING_REQUEST_CODE);
+        buffer.putInt(id);
+        writeFrame(sendingChannels.get(sendingChannelIndex), Frames.finish(buffer));
+    }
+
+    /**
+     * The deadline goes as the milliseconds left rather than a point in time, so the server needs no clock in sync with ours.
+     */
+    private void sendMetaDataWithChannel(SocketChannel sendingChannel, int resultId, int serverPort, int totalOperands,
+                                         PrecisionMode precisionMode, long deadlineMillis, int[] chunksPerOrder) throws IOException {
+        ByteBuffer buffer = Frames.begin(ByteBuffer.allocate(Frames.HEADER_BYTES + (7 + chunksPerOrder.length) * Integer.BYTES + Long.BYTES));
         buffer.putInt(META_DATA_REQUEST_CODE);
         buffer.putInt(resultId);
         buffer.putInt(clientId);
         buffer.putInt(serverPort);
         buffer.putInt(totalOperands);
-        buffer.rewind();
-        sendingChannel.write(buffer);
-        buffer.clear();
+        buffer.putInt(precisionMode.ordinal());
+        buffer.putLong(deadlineMillis);
+        buffer.putInt(chunksPerOrder.length);
+        for (int chunks : chunksPerOrder) {
+            buffer.putInt(chunks);
+        }
+        writeFrame(sendingChannel, Frames.finish(buffer));
+    }
+
+    private void sendBatchWithChannel(SocketChannel sendingChannel, List<List<Operand>> expressions, List<Result> results,
+                                      PrecisionMode precisionMode) throws IOException {
+        int frameBytes = BATCH_FRAME_HEADER_BYTES;
+        for (List<Operand> operands : expressions) {
+            frameBytes += expressionBytes(operands);
+        }
+        ByteBuffer buffer = Frames.begin(ByteBuffer.allocate(frameBytes));
+        buffer.putInt(BATCH_REQUEST_CODE);
+        buffer.putInt(clientId);
+        buffer.putInt(serverPort);
+        buffer.putInt(precisionMode.ordinal());
+        buffer.putInt(results.size());
+        for (Result result : results) {
+            buffer.putInt(result.getId());
+        }
+        for (List<Operand> operands : expressions) {
+            buffer.putInt(operands.size());
+            for (Operand operand : operands) {
+                operandCodec.encode(operand, buffer);
+            }
+        }
+        writeFrame(sendingChannel, Frames.finish(buffer));
+    }
+
+    private int[] countChunksPerOrder(List<Operand> operands, int ordersCount, int leastChannelOperandsNumber, int oneChannelOperandsNumber) {
+        int[] chunksPerOrder = new int[ordersCount];
+        chunksPerOrder[0] = countChunks(operands.subList(0, leastChannelOperandsNumber));
+        for (int i = 1; i < ordersCount; i++) {
+            int k = leastChannelOperandsNumber + (i - 1) * oneChannelOperandsNumber;
+            chunksPerOrder[i] = countChunks(operands.subList(k, k + oneChannelOperandsNumber));
+        }
+        return chunksPerOrder;
+    }
+
+    private int countChunks(List<Operand> list) {
+        int chunkCapacity = BUFFER_SIZE - CALCULATING_FRAME_HEADER_BYTES;
+        int chunks = 1;
+        int used = 0;
+        for (Operand operand : list) {
+            int operandSize = operandCodec.encodedSize(operand);
+            if (chunkCapacity - used < operandSize) {
+                chunks++;
+                used = 0;
+            }
+            used += operandSize;
+        }
+        return chunks;
     }
 
     private void sendCloseRequestWithChannel(SocketChannel sendingChannel) throws IOException {
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer buffer = Frames.begin(ByteBuffer.allocate(BUFFER_SIZE));
         buffer.putInt(CLOSE_CLIENT_REQUEST_CODE);
         buffer.putInt(clientId);
         buffer.putInt(serverPort);
-        buffer.rewind();
-        sendingChannel.write(buffer);
-        buffer.clear();
+        writeFrame(sendingChannel, Frames.finish(buffer));
     }
 
     private void sendWithChannel(SocketChannel sendingChannel, int resultId, List<Operand> list, int operationsOrder) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-        buffer.putInt(CALCULATING_REQUEST_CODE);
-        buffer.putInt(resultId);
-        buffer.putInt(operationsOrder);
         int operationsSubListNumber = 1;
-        buffer.putInt(operationsSubListNumber);
-        buffer.mark();
+        int operandsCountPosition = beginCalculatingFrame(buffer, resultId, operationsOrder, operationsSubListNumber);
         int operandsInBuffer = 0;
-        buffer.putInt(operandsInBuffer);
         for (Operand operand : list) {
-            byte[] operandBytes = serialize(operand);
-            if (buffer.capacity() > buffer.position() + Integer.BYTES + operandBytes.length) {
-                buffer.putInt(operandBytes.length);
-                buffer.put(operandBytes);
-                operandsInBuffer++;
-            } else {
-                buffer.reset();
-                buffer.putInt(operandsInBuffer);
-                buffer.rewind();
-                sendingChannel.write(buffer);
-                buffer.clear();
-                buffer.putInt(CALCULATING_REQUEST_CODE);
-                buffer.putInt(resultId);
-                buffer.putInt(operationsOrder);
-                buffer.putInt(++operationsSubListNumber);
-                buffer.mark();
-                operandsInBuffer = 1;
-                buffer.putInt(operandsInBuffer);
-                buffer.putInt(operandBytes.length);
-                buffer.put(operandBytes);
+            if (buffer.remaining() < operandCodec.encodedSize(operand)) {
+                buffer.putInt(operandsCountPosition, operandsInBuffer);
+                writeFrame(sendingChannel, Frames.finish(buffer));
+                operandsCountPosition = beginCalculatingFrame(buffer, resultId, operationsOrder, ++operationsSubListNumber);
+                operandsInBuffer = 0;
             }
+            operandCodec.encode(operand, buffer);
+            operandsInBuffer++;
         }
-        buffer.reset();
-        buffer.putInt(operandsInBuffer);
-        buffer.rewind();
-        sendingChannel.write(buffer);
-        buffer.clear();
+        buffer.putInt(operandsCountPosition, operandsInBuffer);
+        writeFrame(sendingChannel, Frames.finish(buffer));
+    }
+
+    /**
+     * Bidirectional channels are non-blocking, so a full send buffer is waited out on the channel's own write selector.
+     */
+    private void writeFrame(SocketChannel sendingChannel, ByteBuffer buffer) throws IOException {
+        Frames.write(sendingChannel, buffer, writeSelectors.get(sendingChannel));
+    }
+
+    private int beginCalculatingFrame(ByteBuffer buffer, int resultId, int operationsOrder, int operationsSubListNumber) {
+        Frames.begin(buffer);
+        buffer.putInt(CALCULATING_REQUEST_CODE);
+        buffer.putInt(resultId);
+        buffer.putInt(operationsOrder);
+        buffer.putInt(operationsSubListNumber);
+        int operandsCountPosition = buffer.position();
+        buffer.putInt(0);
+        return operandsCountPosition;
     }
 
 
@@ -332,9 +689,17 @@ public class Client {
         try {
             synchronized (this) {
                 if (!isClosed) {
+                    synchronized (resultMap) {
+                        if (resultTimer != null) {
+                            resultTimer.stop();
+                        }
+                    }
                     executor.shutdown();
                     sendCloseRequestWithChannel(sendingChannels.get(0));
                     closeClientCountDown.await();
+                    if (batchSendingThread != null) {
+                        batchSendingThread.interrupt();
+                    }
                     resultMap.values().forEach(result -> result.setState(ClientState.CLOSE));
                 }
             }
@@ -343,6 +708,17 @@ public class Client {
         }
     }
 
+    /**
+     * Returns null if automatic batching is disabled.
+     */
+    public RequestBatcher.Metrics getBatchMetrics() {
+        return requestBatcher != null ? requestBatcher.getMetrics() : null;
+    }
+
+    public long getTimedOutResults() {
+        return timedOutResults.get();
+    }
+
     public Map<Integer, Result> getResultMap() {
         return resultMap;
     }
@@ -355,4 +731,21 @@ public class Client {
         return clientId;
     }
 
+    public boolean isBidirectional() {
+        return serverPort == BIDIRECTIONAL_SERVER_PORT;
+    }
+
+    private static class PendingExpression {
+        private final List<Operand> operands;
+        private final Result result;
+        private final PrecisionMode precisionMode;
+        private final int bytes;
+
+        public PendingExpression(List<Operand> operands, Result result, PrecisionMode precisionMode, int bytes) {
+            this.operands = operands;
+            this.result = result;
+            this.precisionMode = precisionMode;
+            this.bytes = bytes;
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package nio;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+public class ClientConfig {
+
+    private OperandCodec operandCodec = new BinaryOperandCodec();
+    private int autoBatchMaxOperands = 16;
+    private long batchLingerMicros = 200;
+    private int batchMaxBytes = 8192;
+    private Executor callbackExecutor = ForkJoinPool.commonPool();
+    private long resultTimeoutMillis = 0;
+    private boolean cancelOnTimeout = true;
+    private long timeoutTickMillis = 10;
+
+    public OperandCodec getOperandCodec() {
+        return operandCodec;
+    }
+
+    public ClientConfig setOperandCodec(OperandCodec operandCodec) {
+        if (operandCodec == null) {
+            throw new NullPointerException();
+        }
+        this.operandCodec = operandCodec;
+        return this;
+    }
+
+    public int getAutoBatchMaxOperands() {
+        return autoBatchMaxOperands;
+    }
+
+    /**
+     * {@link Client#calculate(java.util.List)} calls with at most this many operands are coalesced into shared batch frames.
+     * 0 disables automatic batching.
+     */
+    public ClientConfig setAutoBatchMaxOperands(int autoBatchMaxOperands) {
+        if (autoBatchMaxOperands < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.autoBatchMaxOperands = autoBatchMaxOperands;
+        return this;
+    }
+
+    public long getBatchLingerMicros() {
+        return batchLingerMicros;
+    }
+
+    /**
+     * How long an automatic batch waits for more expressions before it is sent.
+     */
+    public ClientConfig setBatchLingerMicros(long batchLingerMicros) {
+        if (batchLingerMicros < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.batchLingerMicros = batchLingerMicros;
+        return this;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * An automatic batch is sent as soon as its encoded expressions would exceed this many bytes.
+     */
+    public ClientConfig setBatchMaxBytes(int batchMaxBytes) {
+        if (batchMaxBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.batchMaxBytes = batchMaxBytes;
+        return this;
+    }
+
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Completes the futures of {@link Client#calculateAsync(java.util.List)}, so their callbacks run here
+     * and not on the thread that receives answers.
+     */
+    public ClientConfig setCallbackExecutor(Executor callbackExecutor) {
+        if (callbackExecutor == null) {
+            throw new NullPointerException();
+        }
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    public long getResultTimeoutMillis() {
+        return resultTimeoutMillis;
+    }
+
+    /**
+     * Results still not done this long after they were requested move to {@link ClientState#TIMEOUT}
+     * and are removed from the client. 0 disables timeouts.
+     */
+    public ClientConfig setResultTimeoutMillis(long resultTimeoutMillis) {
+        if (resultTimeoutMillis < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.resultTimeoutMillis = resultTimeoutMillis;
+        return this;
+    }
+
+    public boolean isCancelOnTimeout() {
+        return cancelOnTimeout;
+    }
+
+    /**
+     * Whether a timed out result is also cancelled on the server.
+     */
+    public ClientConfig setCancelOnTimeout(boolean cancelOnTimeout) {
+        this.cancelOnTimeout = cancelOnTimeout;
+        return this;
+    }
+
+    public long getTimeoutTickMillis() {
+        return timeoutTickMillis;
+    }
+
+    /**
+     * Resolution of result timeouts: a result times out at most this much later than requested.
+     */
+    public ClientConfig setTimeoutTickMillis(long timeoutTickMillis) {
+        if (timeoutTickMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.timeoutTickMillis = timeoutTickMillis;
+        return this;
+    }
+}
@@ -9,5 +9,6 @@ public enum ClientState {
     DONE,
     CANCELLING,
     CANCEL,
-    CLOSE
+    CLOSE,
+    TIMEOUT
 }
@@ -0,0 +1,177 @@
+package nio;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates large expressions in two passes: the unary parts are applied in bulk, grouped by operation
+ * over contiguous {@code double[]} columns, and then the binary operations are folded left to right
+ * straight over the opcode and value arrays. Each bulk loop runs a single kernel, so it has no per-operand
+ * dispatch, and the ABS and SQUARE loops are simple enough for C2 to auto-vectorize. EMPTY operands are
+ * not moved at all. Results are identical to the sequential fold.
+ * Expressions shorter than {@code threshold} go to the sequential evaluator.
+ */
+public class ColumnarExpressionEvaluator implements ExpressionEvaluator {
+
+    private static final OperandType[] OPERAND_TYPES = OperandType.values();
+    private static final int EMPTY = 12;
+    private static final int PLUS = 1;
+    private static final int MINUS = 2;
+    private static final int MULT = 3;
+    private static final int DIVIDE = 4;
+
+    static {
+        if (OperandType.EMPTY.ordinal() != EMPTY || OperandType.PLUS.ordinal() != PLUS || OperandType.MINUS.ordinal() != MINUS
+                || OperandType.MULT.ordinal() != MULT || OperandType.DIVIDE.ordinal() != DIVIDE) {
+            throw new ExceptionInInitializerError("OperandType ordinals changed");
+        }
+    }
+
+    private final int threshold;
+    private final ExpressionEvaluator sequentialEvaluator;
+    private final ThreadLocal<Columns> columns = ThreadLocal.withInitial(Columns::new);
+
+    public ColumnarExpressionEvaluator(int threshold, ExpressionEvaluator sequentialEvaluator) {
+        if (sequentialEvaluator == null) {
+            throw new NullPointerException();
+        }
+        if (threshold <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.threshold = threshold;
+        this.sequentialEvaluator = sequentialEvaluator;
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands) {
+        return evaluate(operands, PrecisionMode.EXACT);
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands, PrecisionMode precisionMode) {
+        int size = operands.size();
+        if (size < threshold) {
+            return sequentialEvaluator.evaluate(operands, precisionMode);
+        }
+        byte[] opcodes = operands.opcodes();
+        double[] values = operands.values();
+        Columns columns = this.columns.get().ensureCapacity(size);
+        int[] offsets = columns.offsets;
+        Arrays.fill(offsets, 0);
+        for (int i = 0; i < size; i++) {
+            offsets[(opcodes[i] & 0x0F) + 1]++;
+        }
+        offsets[EMPTY + 1] = 0;
+        for (int operation = 0; operation < OPERAND_TYPES.length; operation++) {
+            offsets[operation + 1] += offsets[operation];
+        }
+        int[] next = columns.next;
+        System.arraycopy(offsets, 0, next, 0, OPERAND_TYPES.length);
+        double[] grouped = columns.grouped;
+        int[] positions = columns.positions;
+        for (int i = 0; i < size; i++) {
+            int operation = opcodes[i] & 0x0F;
+            if (operation != EMPTY) {
+                int slot = next[operation]++;
+                grouped[slot] = values[i];
+                positions[slot] = i;
+            }
+        }
+        boolean fast = precisionMode == PrecisionMode.FAST;
+        for (int operation = 0; operation < OPERAND_TYPES.length; operation++) {
+            if (offsets[operation] < offsets[operation + 1]) {
+                applyUnary(OPERAND_TYPES[operation], grouped, offsets[operation], offsets[operation + 1], fast);
+            }
+        }
+        double[] unary = columns.unary;
+        System.arraycopy(values, 0, unary, 0, size);
+        for (int slot = 0, end = offsets[OPERAND_TYPES.length]; slot < end; slot++) {
+            unary[positions[slot]] = grouped[slot];
+        }
+        return fold(opcodes, unary, size);
+    }
+
+    private static double fold(byte[] opcodes, double[] unary, int size) {
+        double result = unary[0];
+        for (int i = 1; i < size; i++) {
+            double u = unary[i];
+            switch ((opcodes[i - 1] >> 4) & 0x0F) {
+                case PLUS:
+                    result += u;
+                    break;
+                case MINUS:
+                    result -= u;
+                    break;
+                case MULT:
+                    result *= u;
+                    break;
+                case DIVIDE:
+                    result /= u;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not a binary operation: " + OPERAND_TYPES[(opcodes[i - 1] >> 4) & 0x0F]);
+            }
+        }
+        return OPERAND_TYPES[(opcodes[size - 1] >> 4) & 0x0F] == OperandType.EQUALS ? result : Double.NaN;
+    }
+
+    private static void applyUnary(OperandType operation, double[] values, int from, int to, boolean fast) {
+        switch (operation) {
+            case EMPTY:
+                return;
+            case ABS:
+                for (int i = from; i < to; i++) {
+                    values[i] = Math.abs(values[i]);
+                }
+                return;
+            case SQUARE:
+                for (int i = from; i < to; i++) {
+                    values[i] = Math.sqrt(values[i]);
+                }
+                return;
+            case SIN:
+                for (int i = from; i < to; i++) {
+                    values[i] = fast ? FastMath.sin(values[i]) : Math.sin(values[i]);
+                }
+                return;
+            case COS:
+                for (int i = from; i < to; i++) {
+                    values[i] = fast ? FastMath.cos(values[i]) : Math.cos(values[i]);
+                }
+                return;
+            case TAN:
+                for (int i = from; i < to; i++) {
+                    values[i] = fast ? FastMath.tan(values[i]) : Math.tan(values[i]);
+                }
+                return;
+            case EXP:
+                for (int i = from; i < to; i++) {
+                    values[i] = fast ? FastMath.exp(values[i]) : Math.exp(values[i]);
+                }
+                return;
+            case LN:
+                for (int i = from; i < to; i++) {
+                    values[i] = fast ? FastMath.log(values[i]) : Math.log(values[i]);
+                }
+                return;
+            default:
+                throw new IllegalArgumentException("Not a unary operation: " + operation);
+        }
+    }
+
+    private static class Columns {
+        private final int[] offsets = new int[OPERAND_TYPES.length + 1];
+        private final int[] next = new int[OPERAND_TYPES.length];
+        private double[] grouped = new double[0];
+        private double[] unary = new double[0];
+        private int[] positions = new int[0];
+
+        Columns ensureCapacity(int size) {
+            if (grouped.length < size) {
+                grouped = new double[size];
+                unary = new double[size];
+                positions = new int[size];
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package nio;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles hot expression shapes (the sequence of operation pairs, without the constants)
+ * into a MethodHandle chain {@code (double[] values) -> double}, so evaluating an expression
+ * of a known shape is a straight-line composition of kernels instead of the generic fold.
+ * <p>
+ * Sightings of shapes without a plan are counted in a count-min sketch of decaying counters,
+ * and a shape is compiled once its counter reaches {@code compileThreshold}, so one-off shapes never enter
+ * the plan cache. Plans are looked up in a concurrent map of at most {@code cacheSize} shapes without allocating,
+ * and a full cache evicts with the CLOCK policy. Shapes longer than {@code maxOperands}, shapes with operations
+ * in the wrong position and cold shapes go to the fallback evaluator.
+ */
+public class CompiledExpressionEvaluator implements ExpressionEvaluator {
+
+    private static final int MIN_SHAPE_HITS_TABLE_SIZE = 1024;
+    private static final MethodType UNARY_TYPE = MethodType.methodType(double.class, double.class);
+    private static final MethodType BINARY_TYPE = MethodType.methodType(double.class, double.class, double.class);
+    private static final MethodHandle ELEMENT_GETTER = MethodHandles.arrayElementGetter(double[].class);
+    private static final MethodHandle MEMO_APPLY;
+    private static final MethodHandle[] UNARY_KERNELS = new MethodHandle[OperandType.values().length];
+    private static final MethodHandle[] BINARY_KERNELS = new MethodHandle[OperandType.values().length];
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            UNARY_KERNELS[OperandType.SIN.ordinal()] = lookup.findStatic(Math.class, "sin", UNARY_TYPE);
+            UNARY_KERNELS[OperandType.COS.ordinal()] = lookup.findStatic(Math.class, "cos", UNARY_TYPE);
+            UNARY_KERNELS[OperandType.TAN.ordinal()] = lookup.findStatic(Math.class, "tan", UNARY_TYPE);
+            UNARY_KERNELS[OperandType.EXP.ordinal()] = lookup.findStatic(Math.class, "exp", UNARY_TYPE);
+            UNARY_KERNELS[OperandType.ABS.ordinal()] = lookup.findStatic(Math.class, "abs", UNARY_TYPE);
+            UNARY_KERNELS[OperandType.SQUARE.ordinal()] = lookup.findStatic(Math.class, "sqrt", UNARY_TYPE);
+            UNARY_KERNELS[OperandType.LN.ordinal()] = lookup.findStatic(Math.class, "log", UNARY_TYPE);
+            BINARY_KERNELS[OperandType.PLUS.ordinal()] = lookup.findStatic(CompiledExpressionEvaluator.class, "plus", BINARY_TYPE);
+            BINARY_KERNELS[OperandType.MINUS.ordinal()] = lookup.findStatic(CompiledExpressionEvaluator.class, "minus", BINARY_TYPE);
+            BINARY_KERNELS[OperandType.MULT.ordinal()] = lookup.findStatic(CompiledExpressionEvaluator.class, "mult", BINARY_TYPE);
+            BINARY_KERNELS[OperandType.DIVIDE.ordinal()] = lookup.findStatic(CompiledExpressionEvaluator.class, "divide", BINARY_TYPE);
+            MEMO_APPLY = lookup.findVirtual(UnaryMemoTable.class, "apply", MethodType.methodType(double.class, OperandType.class, double.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int maxOperands;
+    private final int compileThreshold;
+    private final ExpressionEvaluator fallbackEvaluator;
+    private final UnaryMemoTable unaryMemoTable;
+    private final int cacheSize;
+    private final Map<ExpressionShape, Plan> plans = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray shapeHits;
+    private final AtomicInteger shapeHitsSamples = new AtomicInteger(0);
+    private final ThreadLocal<ExpressionShape> probes = ThreadLocal.withInitial(ExpressionShape::new);
+    private final AtomicLong compiledHits = new AtomicLong(0);
+    private final AtomicLong fallbacks = new AtomicLong(0);
+    private final AtomicLong compilations = new AtomicLong(0);
+
+    public CompiledExpressionEvaluator(int cacheSize, int maxOperands, int compileThreshold, ExpressionEvaluator fallbackEvaluator) {
+        this(cacheSize, maxOperands, compileThreshold, fallbackEvaluator, null);
+    }
+
+    /**
+     * Compiled plans call the transcendental kernels through the memo table when it is not null.
+     */
+    public CompiledExpressionEvaluator(int cacheSize, int maxOperands, int compileThreshold, ExpressionEvaluator fallbackEvaluator,
+                                       UnaryMemoTable unaryMemoTable) {
+        if (fallbackEvaluator == null) {
+            throw new NullPointerException();
+        }
+        if (cacheSize <= 0 || maxOperands <= 0 || compileThreshold <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxOperands = maxOperands;
+        this.compileThreshold = compileThreshold;
+        this.fallbackEvaluator = fallbackEvaluator;
+        this.unaryMemoTable = unaryMemoTable;
+        this.cacheSize = cacheSize;
+        shapeHits = new AtomicIntegerArray(Integer.highestOneBit(Math.max(MIN_SHAPE_HITS_TABLE_SIZE, Math.min(1 << 16, cacheSize) * 16) * 2 - 1));
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands) {
+        if (operands.size() == 0 || operands.size() > maxOperands) {
+            fallbacks.incrementAndGet();
+            return fallbackEvaluator.evaluate(operands);
+        }
+        ExpressionShape probe = probes.get().view(operands);
+        Plan plan = plans.get(probe);
+        if (plan == null) {
+            plan = planIfHot(probe);
+        }
+        MethodHandle handle = plan != null ? plan.use() : null;
+        if (handle == null) {
+            fallbacks.incrementAndGet();
+            return fallbackEvaluator.evaluate(operands);
+        }
+        compiledHits.incrementAndGet();
+        try {
+            return (double) handle.invokeExact(operands.values());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Plans are compiled with the exact kernels, so approximate requests go to the fallback evaluator.
+     */
+    @Override
+    public double evaluate(OperandBuffer operands, PrecisionMode precisionMode) {
+        if (precisionMode != PrecisionMode.EXACT) {
+            return fallbackEvaluator.evaluate(operands, precisionMode);
+        }
+        return evaluate(operands);
+    }
+
+    public int getCachedPlans() {
+        return plans.size();
+    }
+
+    public long getCompiledHits() {
+        return compiledHits.get();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    /**
+     * Counts one more sighting of a shape without a plan, and compiles it on reaching {@code compileThreshold}.
+     */
+    private Plan planIfHot(ExpressionShape probe) {
+        int mask = shapeHits.length() - 1;
+        int hits = Math.min(shapeHits.incrementAndGet((probe.hash ^ (probe.hash >>> 16)) & mask),
+                shapeHits.incrementAndGet((probe.hash * 0x9E3779B9 >>> 16) & mask));
+        if (shapeHitsSamples.incrementAndGet() >= shapeHits.length() * 4) {
+            age();
+        }
+        if (hits < compileThreshold) {
+            return null;
+        }
+        ExpressionShape shape = probe.copy();
+        Plan plan = plans.computeIfAbsent(shape, key -> {
+            Plan compiled = new Plan(compile(key.opcodes));
+            if (compiled.handle != null) {
+                compilations.incrementAndGet();
+            }
+            return compiled;
+        });
+        if (plans.size() > cacheSize) {
+            evict(shape);
+        }
+        return plan;
+    }
+
+    /**
+     * Halves every counter, so shapes that were hot long ago stop counting.
+     */
+    private void age() {
+        shapeHitsSamples.set(0);
+        for (int i = 0; i < shapeHits.length(); i++) {
+            shapeHits.set(i, shapeHits.get(i) >> 1);
+        }
+    }
+
+    /**
+     * CLOCK: plans used since the last sweep get a second chance, the first one that was not is evicted.
+     */
+    private void evict(ExpressionShape inserted) {
+        for (int sweep = 0; sweep < 2 && plans.size() > cacheSize; sweep++) {
+            Iterator<Map.Entry<ExpressionShape, Plan>> iterator = plans.entrySet().iterator();
+            while (plans.size() > cacheSize && iterator.hasNext()) {
+                Map.Entry<ExpressionShape, Plan> entry = iterator.next();
+                if (entry.getValue().referenced) {
+                    entry.getValue().referenced = false;
+                } else if (!entry.getKey().equals(inserted)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private MethodHandle compile(byte[] opcodes) {
+        OperandType[] types = OperandType.values();
+        for (int i = 0; i < opcodes.length; i++) {
+            OperandType second = types[(opcodes[i] >> 4) & 0x0F];
+            boolean last = i == opcodes.length - 1;
+            if (!isUnary(types[opcodes[i] & 0x0F]) || (!last && BINARY_KERNELS[second.ordinal()] == null)) {
+                return null;
+            }
+        }
+        if (types[(opcodes[opcodes.length - 1] >> 4) & 0x0F] != OperandType.EQUALS) {
+            return MethodHandles.dropArguments(MethodHandles.constant(double.class, Double.NaN), 0, double[].class);
+        }
+        MethodHandle accumulator = unaryPart(types[opcodes[0] & 0x0F], 0);
+        for (int i = 1; i < opcodes.length; i++) {
+            MethodHandle binary = BINARY_KERNELS[(opcodes[i - 1] >> 4) & 0x0F];
+            MethodHandle step = MethodHandles.filterArguments(binary, 0, accumulator, unaryPart(types[opcodes[i] & 0x0F], i));
+            accumulator = MethodHandles.permuteArguments(step, MethodType.methodType(double.class, double[].class), 0, 0);
+        }
+        return accumulator;
+    }
+
+    private MethodHandle unaryPart(OperandType operation, int index) {
+        MethodHandle value = MethodHandles.insertArguments(ELEMENT_GETTER, 1, index);
+        if (operation == OperandType.EMPTY) {
+            return value;
+        }
+        if (unaryMemoTable != null && operation != OperandType.ABS) {
+            return MethodHandles.filterReturnValue(value, MethodHandles.insertArguments(MEMO_APPLY.bindTo(unaryMemoTable), 0, operation));
+        }
+        return MethodHandles.filterReturnValue(value, UNARY_KERNELS[operation.ordinal()]);
+    }
+
+    private static boolean isUnary(OperandType operation) {
+        return operation == OperandType.EMPTY || UNARY_KERNELS[operation.ordinal()] != null;
+    }
+
+    private static double plus(double a, double b) {
+        return a + b;
+    }
+
+    private static double minus(double a, double b) {
+        return a - b;
+    }
+
+    private static double mult(double a, double b) {
+        return a * b;
+    }
+
+    private static double divide(double a, double b) {
+        return a / b;
+    }
+
+    /**
+     * A compiled shape, or a shape that cannot be compiled when the handle is null.
+     */
+    private static class Plan {
+        private final MethodHandle handle;
+        private volatile boolean referenced = true;
+
+        Plan(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        MethodHandle use() {
+            if (!referenced) {
+                referenced = true;
+            }
+            return handle;
+        }
+    }
+
+    /**
+     * The opcodes of an expression. A probe is a reusable per-thread view of an operand buffer for lookups;
+     * the keys stored in the plan cache are copies.
+     */
+    private static class ExpressionShape {
+        private byte[] opcodes;
+        private int length;
+        private int hash;
+
+        ExpressionShape view(OperandBuffer operands) {
+            opcodes = operands.opcodes();
+            length = operands.size();
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + opcodes[i];
+            }
+            hash = h;
+            return this;
+        }
+
+        ExpressionShape copy() {
+            ExpressionShape shape = new ExpressionShape();
+            shape.opcodes = Arrays.copyOf(opcodes, length);
+            shape.length = length;
+            shape.hash = hash;
+            return shape;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ExpressionShape)) {
+                return false;
+            }
+            ExpressionShape other = (ExpressionShape) o;
+            return length == other.length && Arrays.equals(opcodes, 0, length, other.opcodes, 0, other.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
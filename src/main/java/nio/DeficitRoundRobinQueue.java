@@ -0,0 +1,236 @@
+package nio;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Bounded stage queue shared fairly between flows, such as the clients of the server: every flow has its own queue,
+ * and deficit round robin takes items from the flows with pending work in turn. Each round a flow earns
+ * {@code quantum} times its weight of credit and may take items while their cost fits in its credit,
+ * so flows get throughput in proportion to their weights however many items each of them submits.
+ * A flow that is the only one with pending work earns all the rounds its next item needs at once.
+ * Within a flow items go earliest deadline first when a deadline function is given, else in submission order.
+ */
+public class DeficitRoundRobinQueue<T> implements StageQueue<T> {
+
+    private final int capacity;
+    private final long quantum;
+    private final FlowFunction<T> flowFunction;
+    private final IntUnaryOperator weights;
+    private final EarliestDeadlineQueue.DeadlineFunction<T> deadlineFunction;
+    private final Map<Integer, Flow<T>> flows = new HashMap<>();
+    private final Queue<Flow<T>> activeFlows = new ArrayDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private long sequence = 0;
+
+    public DeficitRoundRobinQueue(int capacity, long quantum, FlowFunction<T> flowFunction, IntUnaryOperator weights,
+                                  EarliestDeadlineQueue.DeadlineFunction<T> deadlineFunction) {
+        if (flowFunction == null || weights == null) {
+            throw new NullPointerException();
+        }
+        if (capacity <= 0 || quantum <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        this.quantum = quantum;
+        this.flowFunction = flowFunction;
+        this.weights = weights;
+        this.deadlineFunction = deadlineFunction;
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        int flowId = flowFunction.flowOf(item);
+        long cost = Math.max(1, flowFunction.costOf(item));
+        boolean hasDeadline = deadlineFunction != null && deadlineFunction.hasDeadline(item);
+        long deadlineNanos = hasDeadline ? deadlineFunction.deadlineNanos(item) : 0;
+        long enqueuedNanos = System.nanoTime();
+        synchronized (flows) {
+            if (size.get() >= capacity) {
+                return false;
+            }
+            Flow<T> flow = flows.computeIfAbsent(flowId, id -> new Flow<>(id, Math.max(1, weights.applyAsInt(id))));
+            flow.items.add(new Entry<>(item, cost, hasDeadline, deadlineNanos, sequence++, enqueuedNanos));
+            if (!flow.active) {
+                flow.active = true;
+                flow.deficit = 0;
+                flow.earned = false;
+                activeFlows.add(flow);
+            }
+            size.incrementAndGet();
+        }
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        synchronized (flows) {
+            Flow<T> flow;
+            while ((flow = activeFlows.peek()) != null) {
+                if (!flow.earned) {
+                    flow.deficit += quantum * flow.weight;
+                    flow.earned = true;
+                }
+                Entry<T> entry = flow.items.peek();
+                if (entry.cost > flow.deficit && activeFlows.size() == 1) {
+                    long credit = quantum * flow.weight;
+                    flow.deficit += (entry.cost - flow.deficit + credit - 1) / credit * credit;
+                }
+                if (entry.cost > flow.deficit) {
+                    flow.earned = false;
+                    activeFlows.add(activeFlows.poll());
+                    continue;
+                }
+                flow.items.poll();
+                flow.deficit -= entry.cost;
+                if (flow.items.isEmpty()) {
+                    flow.active = false;
+                    activeFlows.poll();
+                }
+                size.decrementAndGet();
+                flow.record(System.nanoTime() - entry.enqueuedNanos);
+                return entry.item;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    public Map<Integer, FlowMetrics> getFlowMetrics() {
+        Map<Integer, FlowMetrics> metrics = new HashMap<>();
+        synchronized (flows) {
+            for (Flow<T> flow : flows.values()) {
+                metrics.put(flow.id, new FlowMetrics(flow.weight, flow.items.size(), flow.dequeued, flow.totalDelayNanos, flow.maxDelayNanos));
+            }
+        }
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    public interface FlowFunction<T> {
+        int flowOf(T item);
+
+        long costOf(T item);
+    }
+
+    /**
+     * Queueing delay of one flow: the time its items waited between being offered and being polled.
+     */
+    public static class FlowMetrics {
+        private final int weight;
+        private final int queued;
+        private final long dequeued;
+        private final long totalDelayNanos;
+        private final long maxDelayNanos;
+
+        public FlowMetrics(int weight, int queued, long dequeued, long totalDelayNanos, long maxDelayNanos) {
+            this.weight = weight;
+            this.queued = queued;
+            this.dequeued = dequeued;
+            this.totalDelayNanos = totalDelayNanos;
+            this.maxDelayNanos = maxDelayNanos;
+        }
+
+        /**
+         * Adds up the metrics of the same flow in two queues.
+         */
+        public FlowMetrics merge(FlowMetrics other) {
+            return new FlowMetrics(weight, queued + other.queued, dequeued + other.dequeued,
+                    totalDelayNanos + other.totalDelayNanos, Math.max(maxDelayNanos, other.maxDelayNanos));
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getDequeued() {
+            return dequeued;
+        }
+
+        public long getTotalDelayNanos() {
+            return totalDelayNanos;
+        }
+
+        public long getMaxDelayNanos() {
+            return maxDelayNanos;
+        }
+
+        public double getAverageDelayNanos() {
+            return dequeued == 0 ? 0 : (double) totalDelayNanos / dequeued;
+        }
+
+        @Override
+        public String toString() {
+            return "weight=" + weight + " queued=" + queued + " dequeued=" + dequeued
+                    + " averageDelayNanos=" + getAverageDelayNanos() + " maxDelayNanos=" + maxDelayNanos;
+        }
+    }
+
+    private static class Flow<T> {
+        private final int id;
+        private final int weight;
+        private final Queue<Entry<T>> items = new PriorityQueue<>();
+        private boolean active;
+        private boolean earned;
+        private long deficit;
+        private long dequeued;
+        private long totalDelayNanos;
+        private long maxDelayNanos;
+
+        Flow(int id, int weight) {
+            this.id = id;
+            this.weight = weight;
+        }
+
+        void record(long delayNanos) {
+            dequeued++;
+            totalDelayNanos += delayNanos;
+            maxDelayNanos = Math.max(maxDelayNanos, delayNanos);
+        }
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+        private final T item;
+        private final long cost;
+        private final boolean hasDeadline;
+        private final long deadlineNanos;
+        private final long sequence;
+        private final long enqueuedNanos;
+
+        Entry(T item, long cost, boolean hasDeadline, long deadlineNanos, long sequence, long enqueuedNanos) {
+            this.item = item;
+            this.cost = cost;
+            this.hasDeadline = hasDeadline;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            return EarliestDeadlineQueue.compare(hasDeadline, deadlineNanos, sequence,
+                    other.hasDeadline, other.deadlineNanos, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package nio;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded stage queue that hands out the item with the earliest deadline first. Deadlines are
+ * {@link System#nanoTime()} values; items without one come after every item with one,
+ * and items with equal deadlines keep their submission order. Only items with a deadline pay for the
+ * priority queue: the others go through a lock-free FIFO ring, which is all a workload without deadlines touches.
+ */
+public class EarliestDeadlineQueue<T> implements StageQueue<T> {
+
+    private final PriorityBlockingQueue<Entry<T>> entries = new PriorityBlockingQueue<>();
+    private final MpmcArrayQueue<T> itemsWithoutDeadline;
+    private final AtomicInteger entriesCount = new AtomicInteger();
+    private final DeadlineFunction<T> deadlineFunction;
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public EarliestDeadlineQueue(int capacity, DeadlineFunction<T> deadlineFunction) {
+        if (deadlineFunction == null) {
+            throw new NullPointerException();
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        this.deadlineFunction = deadlineFunction;
+        itemsWithoutDeadline = new MpmcArrayQueue<>(capacity);
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        if (!deadlineFunction.hasDeadline(item)) {
+            itemsWithoutDeadline.offer(item);
+            return true;
+        }
+        entriesCount.incrementAndGet();
+        entries.add(new Entry<>(item, true, deadlineFunction.deadlineNanos(item), sequence.getAndIncrement()));
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        if (entriesCount.get() > 0) {
+            Entry<T> entry = entries.poll();
+            if (entry != null) {
+                entriesCount.decrementAndGet();
+                size.decrementAndGet();
+                return entry.item;
+            }
+        }
+        T item = itemsWithoutDeadline.poll();
+        if (item != null) {
+            size.decrementAndGet();
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Earliest deadline first, then submission order; deadlines are compared as {@link System#nanoTime()} values.
+     */
+    static int compare(boolean hasDeadline, long deadlineNanos, long sequence,
+                       boolean otherHasDeadline, long otherDeadlineNanos, long otherSequence) {
+        if (hasDeadline != otherHasDeadline) {
+            return hasDeadline ? -1 : 1;
+        }
+        if (hasDeadline && deadlineNanos != otherDeadlineNanos) {
+            return deadlineNanos - otherDeadlineNanos < 0 ? -1 : 1;
+        }
+        return Long.compare(sequence, otherSequence);
+    }
+
+    public interface DeadlineFunction<T> {
+        boolean hasDeadline(T item);
+
+        long deadlineNanos(T item);
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+        private final T item;
+        private final boolean hasDeadline;
+        private final long deadlineNanos;
+        private final long sequence;
+
+        Entry(T item, boolean hasDeadline, long deadlineNanos, long sequence) {
+            this.item = item;
+            this.hasDeadline = hasDeadline;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            return compare(hasDeadline, deadlineNanos, sequence, other.hasDeadline, other.deadlineNanos, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package nio;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how expensive an expression is to evaluate: every operand costs the weight of its unary
+ * operation plus the weight of its binary one. Weights are relative; the defaults make the
+ * transcendental functions an order of magnitude dearer than arithmetic.
+ */
+public class ExpressionCostModel {
+
+    private static final OperandType[] OPERAND_TYPES = OperandType.values();
+
+    private final int[] weights = new int[OPERAND_TYPES.length];
+    private final int[] opcodeCosts = new int[256];
+
+    public ExpressionCostModel() {
+        Arrays.fill(weights, 1);
+        weights[OperandType.DIVIDE.ordinal()] = 2;
+        weights[OperandType.ABS.ordinal()] = 2;
+        weights[OperandType.SQUARE.ordinal()] = 2;
+        weights[OperandType.SIN.ordinal()] = 20;
+        weights[OperandType.COS.ordinal()] = 20;
+        weights[OperandType.TAN.ordinal()] = 20;
+        weights[OperandType.EXP.ordinal()] = 15;
+        weights[OperandType.LN.ordinal()] = 15;
+        updateOpcodeCosts();
+    }
+
+    public int getWeight(OperandType operandType) {
+        return weights[operandType.ordinal()];
+    }
+
+    public ExpressionCostModel setWeight(OperandType operandType, int weight) {
+        if (operandType == null) {
+            throw new NullPointerException();
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException();
+        }
+        weights[operandType.ordinal()] = weight;
+        updateOpcodeCosts();
+        return this;
+    }
+
+    public long cost(OperandBuffer operands) {
+        byte[] opcodes = operands.opcodes();
+        long cost = 0;
+        for (int i = 0; i < operands.size(); i++) {
+            cost += opcodeCosts[opcodes[i] & 0xFF];
+        }
+        return cost;
+    }
+
+    private void updateOpcodeCosts() {
+        for (OperandType operationFirst : OPERAND_TYPES) {
+            for (OperandType operationSecond : OPERAND_TYPES) {
+                int opcode = OperandBuffer.opcode(operationFirst, operationSecond) & 0xFF;
+                opcodeCosts[opcode] = weights[operationFirst.ordinal()] + weights[operationSecond.ordinal()];
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package nio;
+
+/**
+ * Computes the value of an assembled expression on the server.
+ */
+public interface ExpressionEvaluator {
+
+    double evaluate(OperandBuffer operands);
+
+    /**
+     * Evaluates with the requested precision. Evaluators without an approximate mode compute
+     * exactly, which is within the bounds of every mode.
+     */
+    default double evaluate(OperandBuffer operands, PrecisionMode precisionMode) {
+        return evaluate(operands);
+    }
+}
@@ -0,0 +1,97 @@
+package nio;
+
+/**
+ * 128-bit content hash of an operand sequence: two independent polynomial hashes over
+ * the mixed (opcode, value bits) of each operand. Hashes of consecutive chunks compose with
+ * {@link #then(ExpressionHash)}, so chunks can be hashed while they are decoded, in any order.
+ */
+public final class ExpressionHash {
+
+    private static final long FIRST_BASE = 0x9E3779B97F4A7C15L;
+    private static final long SECOND_BASE = 0xC2B2AE3D27D4EB4FL;
+    private static final long SECOND_SEED = 0x165667B19E3779F9L;
+
+    private final long first;
+    private final long second;
+    private final long length;
+
+    private ExpressionHash(long first, long second, long length) {
+        this.first = first;
+        this.second = second;
+        this.length = length;
+    }
+
+    public static ExpressionHash of(OperandBuffer operands) {
+        long first = 0;
+        long second = 0;
+        for (int i = 0; i < operands.size(); i++) {
+            long operand = Double.doubleToLongBits(operands.getValue(i)) * 31 + operands.getOpcode(i);
+            first = first * FIRST_BASE + mix(operand);
+            second = second * SECOND_BASE + mix(operand ^ SECOND_SEED);
+        }
+        return new ExpressionHash(first, second, operands.size());
+    }
+
+    /**
+     * Hash of this sequence followed by the next one.
+     */
+    public ExpressionHash then(ExpressionHash next) {
+        return new ExpressionHash(
+                first * power(FIRST_BASE, next.length) + next.first,
+                second * power(SECOND_BASE, next.length) + next.second,
+                length + next.length);
+    }
+
+    /**
+     * Hash of the same sequence in a different namespace, e.g. evaluated with another precision mode.
+     */
+    public ExpressionHash tagged(int tag) {
+        return new ExpressionHash(first * FIRST_BASE + mix(~(long) tag), second * SECOND_BASE + mix(~(long) tag ^ SECOND_SEED), length);
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static long power(long base, long exponent) {
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ExpressionHash)) {
+            return false;
+        }
+        ExpressionHash that = (ExpressionHash) o;
+        return first == that.first && second == that.second && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (first ^ (first >>> 32));
+    }
+
+    long sketchHash() {
+        return second;
+    }
+}
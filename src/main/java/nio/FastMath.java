@@ -0,0 +1,145 @@
+package nio;
+
+/**
+ * Approximations of the transcendental kernels for {@link PrecisionMode#FAST}. Arguments outside
+ * the ranges below, NaN and infinities go to {@link Math}, so only the bounds here differ from exact mode.
+ * <ul>
+ * <li>sin, cos: Cody-Waite reduction by pi/2 with a two-part constant and degree 11/10 polynomials on
+ * [-pi/4, pi/4]; absolute error at most 1e-11 for |x| &lt;= 2^19 * pi/2.</li>
+ * <li>tan: sin/cos sharing one reduction; error at most 1e-11 * (1 + tan^2 x), the polynomial error
+ * scaled by the derivative, so relative error grows near the poles.</li>
+ * <li>exp: x = (k/64) ln 2 + r, a 64-entry table of 2^(j/64) and a degree 4 polynomial for |r| &lt;= ln2/128;
+ * relative error at most 1e-13 for |x| &lt;= 708.</li>
+ * <li>log: for |x - 1| &lt; 1/128 a degree 6 series of log1p; otherwise the exponent, a 128-entry table
+ * of reciprocals indexed by the top mantissa bits and a degree 4 series of log1p;
+ * relative error at most 1e-10 for positive normal x.</li>
+ * </ul>
+ */
+public final class FastMath {
+
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+    private static final double PIO2_HI = 1.57079632673412561417e+00;
+    private static final double PIO2_LO = 6.07710050650619224932e-11;
+    private static final double MAX_REDUCED_ARGUMENT = 0x1p19 * Math.PI / 2;
+
+    private static final double S1 = -1.66666666666666324348e-01;
+    private static final double S2 = 8.33333333332248946124e-03;
+    private static final double S3 = -1.98412698298579493134e-04;
+    private static final double S4 = 2.75573137070700676789e-06;
+    private static final double S5 = -2.50507602534068634195e-08;
+    private static final double C1 = 4.16666666666666019037e-02;
+    private static final double C2 = -1.38888888888741095749e-03;
+    private static final double C3 = 2.48015872894767294178e-05;
+    private static final double C4 = -2.75573143513906633035e-07;
+    private static final double C5 = 2.08757232129817482790e-09;
+
+    private static final int EXP_TABLE_BITS = 6;
+    private static final int EXP_TABLE_SIZE = 1 << EXP_TABLE_BITS;
+    private static final double EXP_SHIFT = EXP_TABLE_SIZE / Math.log(2);
+    private static final double LN2_OVER_N_HI = 6.93147180369123816490e-01 / EXP_TABLE_SIZE;
+    private static final double LN2_OVER_N_LO = 1.90821492927058770002e-10 / EXP_TABLE_SIZE;
+    private static final double MAX_EXP_ARGUMENT = 708;
+    private static final double[] EXP_TABLE = new double[EXP_TABLE_SIZE];
+
+    private static final int LOG_TABLE_BITS = 7;
+    private static final int LOG_TABLE_SIZE = 1 << LOG_TABLE_BITS;
+    private static final double LN2 = 0x1.62e42fefa39efp-1;
+    private static final double LOG_NEAR_ONE = 1.0 / 128;
+    private static final double[] LOG_INVERSES = new double[LOG_TABLE_SIZE];
+    private static final double[] LOG_VALUES = new double[LOG_TABLE_SIZE];
+
+    static {
+        for (int j = 0; j < EXP_TABLE_SIZE; j++) {
+            EXP_TABLE[j] = Math.pow(2, (double) j / EXP_TABLE_SIZE);
+        }
+        for (int j = 0; j < LOG_TABLE_SIZE; j++) {
+            double center = 1 + (j + 0.5) / LOG_TABLE_SIZE;
+            LOG_INVERSES[j] = 1 / center;
+            LOG_VALUES[j] = -Math.log(LOG_INVERSES[j]);
+        }
+    }
+
+    private FastMath() {
+    }
+
+    public static double sin(double x) {
+        if (!(Math.abs(x) <= MAX_REDUCED_ARGUMENT)) {
+            return Math.sin(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        return quadrant(x, k, (int) k);
+    }
+
+    public static double cos(double x) {
+        if (!(Math.abs(x) <= MAX_REDUCED_ARGUMENT)) {
+            return Math.cos(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        return quadrant(x, k, (int) k + 1);
+    }
+
+    public static double tan(double x) {
+        if (!(Math.abs(x) <= MAX_REDUCED_ARGUMENT)) {
+            return Math.tan(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = (x - k * PIO2_HI) - k * PIO2_LO;
+        double sin = sinPolynomial(r);
+        double cos = cosPolynomial(r);
+        boolean even = ((int) k & 1) == 0;
+        return (even ? sin : -cos) / (even ? cos : sin);
+    }
+
+    /**
+     * sin(r + quadrant * pi/2) where r is x reduced by k * pi/2, selected without branching on the quadrant.
+     */
+    private static double quadrant(double x, double k, int quadrant) {
+        double r = (x - k * PIO2_HI) - k * PIO2_LO;
+        double value = (quadrant & 1) == 0 ? sinPolynomial(r) : cosPolynomial(r);
+        return (quadrant & 2) == 0 ? value : -value;
+    }
+
+    public static double exp(double x) {
+        if (!(Math.abs(x) <= MAX_EXP_ARGUMENT)) {
+            return Math.exp(x);
+        }
+        double k = Math.rint(x * EXP_SHIFT);
+        double r = (x - k * LN2_OVER_N_HI) - k * LN2_OVER_N_LO;
+        int n = (int) k;
+        double p = 1 + r * (1 + r * (0.5 + r * (1.0 / 6 + r * (1.0 / 24))));
+        double scale = Double.longBitsToDouble((long) ((n >> EXP_TABLE_BITS) + 1023) << 52);
+        return scale * EXP_TABLE[n & (EXP_TABLE_SIZE - 1)] * p;
+    }
+
+    public static double log(double x) {
+        if (!(x >= Double.MIN_NORMAL && x < Double.POSITIVE_INFINITY)) {
+            return Math.log(x);
+        }
+        double f = x - 1;
+        if (Math.abs(f) < LOG_NEAR_ONE) {
+            return log1pPolynomial(f);
+        }
+        long bits = Double.doubleToRawLongBits(x);
+        int exponent = (int) (bits >>> 52) - 1023;
+        long mantissaBits = bits & 0x000FFFFFFFFFFFFFL;
+        double m = Double.longBitsToDouble(mantissaBits | 0x3FF0000000000000L);
+        int j = (int) (mantissaBits >>> (52 - LOG_TABLE_BITS));
+        double r = m * LOG_INVERSES[j] - 1;
+        double p = r - r * r * (0.5 - r * (1.0 / 3 - r * 0.25));
+        return exponent * LN2 + LOG_VALUES[j] + p;
+    }
+
+    private static double sinPolynomial(double r) {
+        double z = r * r;
+        return r + r * z * (S1 + z * (S2 + z * (S3 + z * (S4 + z * S5))));
+    }
+
+    private static double cosPolynomial(double r) {
+        double z = r * r;
+        return 1 - 0.5 * z + z * z * (C1 + z * (C2 + z * (C3 + z * (C4 + z * C5))));
+    }
+
+    private static double log1pPolynomial(double f) {
+        return f - f * f * (0.5 - f * (1.0 / 3 - f * (0.25 - f * (0.2 - f * (1.0 / 6)))));
+    }
+}
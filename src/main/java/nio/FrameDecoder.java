@@ -0,0 +1,117 @@
+package nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Per-connection accumulation buffer that splits the byte stream into length-prefixed frames.
+ * Frames returned by {@link #nextFrame()} are views of the internal buffer and stay valid until the next read.
+ */
+public class FrameDecoder {
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 4096;
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    public static final int MAX_READ_BYTES = 256 * 1024;
+
+    private final int maxFrameLength;
+    private ByteBuffer accumulator;
+    private int readPosition = 0;
+
+    public FrameDecoder() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(int initialCapacity, int maxFrameLength) {
+        if (initialCapacity <= Integer.BYTES || maxFrameLength <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxFrameLength = maxFrameLength;
+        accumulator = ByteBuffer.allocate(initialCapacity);
+    }
+
+    /**
+     * Reads until a whole frame is buffered, the channel has nothing more or {@link #MAX_READ_BYTES} were read,
+     * so one busy connection cannot keep its reactor away from the others. The buffer only grows to fit
+     * the frame being read, and never beyond {@code maxFrameLength} plus the header.
+     */
+    public int read(ReadableByteChannel channel) throws IOException {
+        compact();
+        int total = 0;
+        while (total < MAX_READ_BYTES && needsMoreBytes()) {
+            if (!accumulator.hasRemaining()) {
+                int maxCapacity = maxFrameLength + Integer.BYTES;
+                if (accumulator.capacity() >= maxCapacity) {
+                    return total;
+                }
+                grow((int) Math.min(maxCapacity, Math.max(requiredCapacity(), accumulator.capacity() * 2L)));
+            }
+            int read = channel.read(accumulator);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            if (read == 0) {
+                return total;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    public ByteBuffer nextFrame() throws IOException {
+        int available = accumulator.position() - readPosition;
+        if (available < Integer.BYTES) {
+            return null;
+        }
+        int frameLength = accumulator.getInt(readPosition);
+        if (frameLength < 0 || frameLength > maxFrameLength) {
+            throw new IOException("Illegal frame length " + frameLength);
+        }
+        if (available < Integer.BYTES + frameLength) {
+            return null;
+        }
+        ByteBuffer frame = accumulator.duplicate();
+        frame.limit(readPosition + Integer.BYTES + frameLength);
+        frame.position(readPosition + Integer.BYTES);
+        readPosition += Integer.BYTES + frameLength;
+        return frame.slice();
+    }
+
+    public int bufferedBytes() {
+        return accumulator.position() - readPosition;
+    }
+
+    /**
+     * False once a whole frame is buffered, or a frame header that {@link #nextFrame()} will reject.
+     */
+    private boolean needsMoreBytes() {
+        int available = accumulator.position() - readPosition;
+        if (available < Integer.BYTES) {
+            return true;
+        }
+        int frameLength = accumulator.getInt(readPosition);
+        return frameLength >= 0 && frameLength <= maxFrameLength && available < Integer.BYTES + frameLength;
+    }
+
+    private int requiredCapacity() {
+        int available = accumulator.position() - readPosition;
+        return available < Integer.BYTES ? Integer.BYTES : Integer.BYTES + accumulator.getInt(readPosition);
+    }
+
+    private void compact() {
+        if (readPosition == 0) {
+            return;
+        }
+        accumulator.flip();
+        accumulator.position(readPosition);
+        accumulator.compact();
+        readPosition = 0;
+    }
+
+    private void grow(int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        accumulator.flip();
+        grown.put(accumulator);
+        accumulator = grown;
+    }
+}
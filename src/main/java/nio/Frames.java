@@ -0,0 +1,60 @@
+package nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Frame layout on the wire: an int payload length followed by the payload.
+ */
+public class Frames {
+
+    public static final int HEADER_BYTES = Integer.BYTES;
+
+    public static ByteBuffer begin(ByteBuffer buffer) {
+        buffer.clear();
+        buffer.position(HEADER_BYTES);
+        return buffer;
+    }
+
+    public static ByteBuffer finish(ByteBuffer buffer) {
+        buffer.putInt(0, buffer.position() - HEADER_BYTES);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        write(channel, buffer, null);
+    }
+
+    /**
+     * Writes the whole buffer. When a non-blocking channel's send buffer is full, the writer waits on
+     * {@code writeSelector} for OP_WRITE instead of spinning; without one a selector is opened for the wait.
+     */
+    public static void write(SocketChannel channel, ByteBuffer buffer, Selector writeSelector) throws IOException {
+        synchronized (channel) {
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    if (writeSelector != null) {
+                        awaitWritable(channel, writeSelector);
+                    } else {
+                        try (Selector selector = Selector.open()) {
+                            awaitWritable(channel, selector);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void awaitWritable(SocketChannel channel, Selector writeSelector) throws IOException {
+        SelectionKey key = channel.keyFor(writeSelector);
+        if (key == null) {
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        }
+        writeSelector.select(100);
+        writeSelector.selectedKeys().clear();
+    }
+}
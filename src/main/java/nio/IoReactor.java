@@ -0,0 +1,265 @@
+package nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector thread that owns a share of the accepted connections: reads them, splits frames
+ * and hands every complete frame to the frame handler. Writes from any thread go out right away
+ * as far as the socket takes them; the rest is queued per connection and flushed on OP_WRITE,
+ * so a slow reader never blocks the writer. A frame the handler cannot take yet stalls its connection:
+ * the reactor stops reading it and offers the frame again every few milliseconds, so a full pipeline
+ * pushes back on the clients instead of blocking the selector thread.
+ */
+public class IoReactor {
+
+    private static final int MAX_PENDING_WRITE_BYTES = 64 * 1024 * 1024;
+    private static final long STALLED_RETRY_MILLIS = 1;
+
+    private final Selector selector;
+    private final FrameHandler frameHandler;
+    private final Queue<SocketChannel> assignedChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<SelectionKey> stalledKeys = new ArrayDeque<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Thread thread;
+
+    public IoReactor(String name, FrameHandler frameHandler) throws IOException {
+        if (frameHandler == null) {
+            throw new NullPointerException();
+        }
+        this.frameHandler = frameHandler;
+        selector = Selector.open();
+        thread = new Thread(this::run, name);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void close() {
+        thread.interrupt();
+        selector.wakeup();
+    }
+
+    public void assign(SocketChannel channel) {
+        connections.incrementAndGet();
+        assignedChannels.add(channel);
+        selector.wakeup();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public boolean owns(SocketChannel channel) {
+        return channel.keyFor(selector) != null;
+    }
+
+    /**
+     * Writes {@code buffer} to a connection of this reactor without waiting for the peer to read it.
+     * The buffer may be reused once this returns.
+     */
+    public void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        SelectionKey key = channel.keyFor(selector);
+        Connection connection = key != null ? (Connection) key.attachment() : null;
+        if (connection == null) {
+            throw new ClosedChannelException();
+        }
+        synchronized (connection) {
+            if (connection.pendingWrites.isEmpty()) {
+                channel.write(buffer);
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            if (connection.pendingBytes + buffer.remaining() > MAX_PENDING_WRITE_BYTES) {
+                throw new IOException("Too many bytes pending for a connection that does not read");
+            }
+            ByteBuffer pending = ByteBuffer.allocate(buffer.remaining());
+            pending.put(buffer);
+            pending.flip();
+            connection.pendingWrites.add(pending);
+            connection.pendingBytes += pending.remaining();
+            try {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } catch (CancelledKeyException e) {
+                throw new ClosedChannelException();
+            }
+        }
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (stalledKeys.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.select(STALLED_RETRY_MILLIS);
+                }
+                registerAssignedChannels();
+                retryStalledKeys();
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    if (key.isValid() && key.isWritable()) {
+                        flush(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeConnection(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void registerAssignedChannels() {
+        SocketChannel channel;
+        while ((channel = assignedChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new Connection());
+            } catch (IOException e) {
+                connections.decrementAndGet();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        try {
+            try {
+                connection.endOfStream = connection.frameDecoder.read(channel) < 0;
+            } catch (IOException e) {
+                connection.endOfStream = true;
+            }
+            if (!handleFrames(key, connection)) {
+                synchronized (connection) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                stalledKeys.add(key);
+            } else if (connection.endOfStream) {
+                closeConnection(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            closeConnection(key);
+        }
+    }
+
+    private void retryStalledKeys() {
+        for (int i = stalledKeys.size(); i > 0; i--) {
+            SelectionKey key = stalledKeys.poll();
+            Connection connection = (Connection) key.attachment();
+            if (connection == null) {
+                continue;
+            }
+            try {
+                if (!handleFrames(key, connection)) {
+                    stalledKeys.add(key);
+                } else if (connection.endOfStream) {
+                    closeConnection(key);
+                } else {
+                    synchronized (connection) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                closeConnection(key);
+            }
+        }
+    }
+
+    /**
+     * Hands the buffered frames to the frame handler in order; returns false, keeping the frame
+     * the handler turned down, when the connection has to stall.
+     */
+    private boolean handleFrames(SelectionKey key, Connection connection) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer frame = connection.stalledFrame != null ? connection.stalledFrame : connection.frameDecoder.nextFrame();
+        while (frame != null) {
+            int position = frame.position();
+            if (!frameHandler.handle(frame, channel)) {
+                frame.position(position);
+                connection.stalledFrame = frame;
+                return false;
+            }
+            frame = connection.frameDecoder.nextFrame();
+        }
+        connection.stalledFrame = null;
+        return true;
+    }
+
+    private void flush(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        try {
+            synchronized (connection) {
+                ByteBuffer pending;
+                while ((pending = connection.pendingWrites.peek()) != null) {
+                    connection.pendingBytes -= channel.write(pending);
+                    if (pending.hasRemaining()) {
+                        return;
+                    }
+                    connection.pendingWrites.poll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            closeConnection(key);
+        }
+    }
+
+    private void closeConnection(SelectionKey key) {
+        if (key.attachment() == null) {
+            return;
+        }
+        key.attach(null);
+        key.cancel();
+        connections.decrementAndGet();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static class Connection {
+        private final FrameDecoder frameDecoder = new FrameDecoder();
+        private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        private long pendingBytes;
+        private ByteBuffer stalledFrame;
+        private boolean endOfStream;
+    }
+
+    public interface FrameHandler {
+        /**
+         * Returns false, leaving the frame unread, when it cannot be taken yet.
+         */
+        boolean handle(ByteBuffer frame, SocketChannel channel) throws IOException;
+    }
+}
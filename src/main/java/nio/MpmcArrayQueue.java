@@ -0,0 +1,92 @@
+package nio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue over a ring of sequenced slots.
+ * A slot is free for the producer at position p when its sequence equals p and holds an item
+ * for the consumer at position p when its sequence equals p + 1.
+ */
+public class MpmcArrayQueue<T> implements StageQueue<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+
+    public MpmcArrayQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        items = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        long position = producerPosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    items.set(index, item);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = producerPosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = producerPosition.get();
+            }
+        }
+    }
+
+    @Override
+    public T poll() {
+        long position = consumerPosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (consumerPosition.compareAndSet(position, position + 1)) {
+                    T item = items.get(index);
+                    items.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return item;
+                }
+                position = consumerPosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = consumerPosition.get();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        long size = producerPosition.get() - consumerPosition.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    @Override
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,131 @@
+package nio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable primitive storage for an expression: one opcode byte and one double per operand.
+ * The opcode keeps the first operation ordinal in the low nibble and the second one in the high nibble.
+ */
+public class OperandBuffer {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final OperandType[] OPERAND_TYPES = OperandType.values();
+
+    private byte[] opcodes;
+    private double[] values;
+    private int size;
+
+    public OperandBuffer() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public OperandBuffer(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        opcodes = new byte[initialCapacity];
+        values = new double[initialCapacity];
+    }
+
+    public static OperandBuffer of(List<Operand> operands) {
+        OperandBuffer buffer = new OperandBuffer(operands.size());
+        for (Operand operand : operands) {
+            buffer.add(operand);
+        }
+        return buffer;
+    }
+
+    public static byte opcode(OperandType operationFirst, OperandType operationSecond) {
+        return (byte) (operationFirst.ordinal() | operationSecond.ordinal() << 4);
+    }
+
+    public void add(Operand operand) {
+        add(operand.getOperationFirst(), operand.getA(), operand.getOperationSecond());
+    }
+
+    public void add(OperandType operationFirst, double a, OperandType operationSecond) {
+        add(opcode(operationFirst, operationSecond), a);
+    }
+
+    public void add(byte opcode, double a) {
+        ensureCapacity(size + 1);
+        opcodes[size] = opcode;
+        values[size] = a;
+        size++;
+    }
+
+    public void addAll(OperandBuffer other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.opcodes, 0, opcodes, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public byte getOpcode(int index) {
+        checkIndex(index);
+        return opcodes[index];
+    }
+
+    public OperandType getOperationFirst(int index) {
+        return OPERAND_TYPES[getOpcode(index) & 0x0F];
+    }
+
+    public OperandType getOperationSecond(int index) {
+        return OPERAND_TYPES[(getOpcode(index) >> 4) & 0x0F];
+    }
+
+    public Operand get(int index) {
+        return new Operand(getOperationFirst(index), getValue(index), getOperationSecond(index));
+    }
+
+    /**
+     * Backing array of opcodes, valid up to {@link #size()}.
+     */
+    byte[] opcodes() {
+        return opcodes;
+    }
+
+    /**
+     * Backing array of values, valid up to {@link #size()}.
+     */
+    double[] values() {
+        return values;
+    }
+
+    public List<Operand> toList() {
+        List<Operand> operands = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            operands.add(get(i));
+        }
+        return operands;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > opcodes.length) {
+            int newCapacity = Math.max(capacity, Math.max(DEFAULT_INITIAL_CAPACITY, opcodes.length * 2));
+            opcodes = Arrays.copyOf(opcodes, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+    }
+}
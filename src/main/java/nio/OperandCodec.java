@@ -0,0 +1,19 @@
+package nio;
+
+import java.nio.ByteBuffer;
+
+public interface OperandCodec {
+
+    int encodedSize(Operand operand);
+
+    void encode(Operand operand, ByteBuffer buffer);
+
+    Operand decode(ByteBuffer buffer);
+
+    /**
+     * Decodes the next operand straight into the target buffer.
+     */
+    default void decode(ByteBuffer buffer, OperandBuffer target) {
+        target.add(decode(buffer));
+    }
+}
@@ -1,62 +1,111 @@
 package nio;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.function.BinaryOperator;
-import java.util.function.UnaryOperator;
 
 
 public class OperandsParser {
 
-    private static final Map<OperandType, UnaryOperator<Double>> unaryOperandsMap = new HashMap<>();
-    private static final Map<OperandType, BinaryOperator<Double>> binaryOperandsMap = new HashMap<>();
+    public static double parseAndCalculate(List<Operand> operands) {
+        return parseAndCalculate(OperandBuffer.of(operands));
+    }
 
-    static {
-        unaryOperandsMap.put(OperandType.SIN, Math::sin);
-        unaryOperandsMap.put(OperandType.COS, Math::cos);
-        unaryOperandsMap.put(OperandType.TAN, Math::tan);
-        unaryOperandsMap.put(OperandType.EXP, Math::exp);
-        unaryOperandsMap.put(OperandType.ABS, Math::abs);
-        unaryOperandsMap.put(OperandType.SQUARE, Math::sqrt);
-        unaryOperandsMap.put(OperandType.LN, Math::log);
-        unaryOperandsMap.put(OperandType.EMPTY, UnaryOperator.identity());
+    public static double parseAndCalculate(OperandBuffer operands) {
+        return parseAndCalculate(operands, PrecisionMode.EXACT);
+    }
 
-        binaryOperandsMap.put(OperandType.MINUS, (a, b) -> a - b);
-        binaryOperandsMap.put(OperandType.PLUS, (a, b) -> a + b);
-        binaryOperandsMap.put(OperandType.MULT, (a, b) -> a * b);
-        binaryOperandsMap.put(OperandType.DIVIDE, (a, b) -> a / b);
+    /**
+     * Folds the expression, looking the unary parts up in the memo table when it is not null.
+     */
+    public static double parseAndCalculate(OperandBuffer operands, UnaryMemoTable unaryMemoTable) {
+        return parseAndCalculate(operands, unaryMemoTable, false);
     }
 
-    public static double parseAndCalculate(List<Operand> operands) {
-        Operand currentOperand = operands.get(0);
-        double result = calculateUnaryPart(currentOperand);
-        if (isEqualsOperand(currentOperand) && operands.size() == 1) {
-            return result;
+    /**
+     * Folds the expression with the exact kernels or, in {@link PrecisionMode#FAST}, with {@link FastMath}.
+     */
+    public static double parseAndCalculate(OperandBuffer operands, PrecisionMode precisionMode) {
+        return parseAndCalculate(operands, null, precisionMode == PrecisionMode.FAST);
+    }
+
+    private static double parseAndCalculate(OperandBuffer operands, UnaryMemoTable unaryMemoTable, boolean fast) {
+        double result = calculateUnaryPart(unaryMemoTable, fast, operands.getOperationFirst(0), operands.getValue(0));
+        int size = operands.size();
+        if (size == 1) {
+            return isEqualsOperand(operands, 0) ? result : Double.NaN;
         }
-        Operand nextOperand = null;
-        OperandType currentOperandSecond = currentOperand.getOperationSecond();
-        for (int i = 1; i < operands.size(); i++) {
-            nextOperand = operands.get(i);
-            result = binaryOperandsMap.get(currentOperandSecond).apply(
+        for (int i = 1; i < size; i++) {
+            result = calculateBinaryPart(
+                    operands.getOperationSecond(i - 1),
                     result,
-                    calculateUnaryPart(nextOperand)
+                    calculateUnaryPart(unaryMemoTable, fast, operands.getOperationFirst(i), operands.getValue(i))
             );
-            currentOperandSecond = nextOperand.getOperationSecond();
         }
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        return isEqualsOperand(operands, size - 1) ? result : Double.NaN;
+    }
+
+    private static double calculateUnaryPart(UnaryMemoTable unaryMemoTable, boolean fast, OperandType operation, double a) {
+        if (fast) {
+            return calculateFastUnaryPart(operation, a);
         }
-        return (nextOperand != null && isEqualsOperand(nextOperand)) ? result : Double.NaN;
+        return unaryMemoTable != null ? unaryMemoTable.apply(operation, a) : calculateUnaryPart(operation, a);
     }
 
-    private static double calculateUnaryPart(Operand operand) {
-        return unaryOperandsMap.get(operand.getOperationFirst()).apply(operand.getA());
+    static double calculateFastUnaryPart(OperandType operation, double a) {
+        switch (operation) {
+            case SIN:
+                return FastMath.sin(a);
+            case COS:
+                return FastMath.cos(a);
+            case TAN:
+                return FastMath.tan(a);
+            case EXP:
+                return FastMath.exp(a);
+            case LN:
+                return FastMath.log(a);
+            default:
+                return calculateUnaryPart(operation, a);
+        }
+    }
+
+    static double calculateUnaryPart(OperandType operation, double a) {
+        switch (operation) {
+            case SIN:
+                return Math.sin(a);
+            case COS:
+                return Math.cos(a);
+            case TAN:
+                return Math.tan(a);
+            case EXP:
+                return Math.exp(a);
+            case ABS:
+                return Math.abs(a);
+            case SQUARE:
+                return Math.sqrt(a);
+            case LN:
+                return Math.log(a);
+            case EMPTY:
+                return a;
+            default:
+                throw new IllegalArgumentException("Not a unary operation: " + operation);
+        }
+    }
+
+    static double calculateBinaryPart(OperandType operation, double a, double b) {
+        switch (operation) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case MULT:
+                return a * b;
+            case DIVIDE:
+                return a / b;
+            default:
+                throw new IllegalArgumentException("Not a binary operation: " + operation);
+        }
     }
 
-    private static boolean isEqualsOperand(Operand operand) {
-        return operand.getOperationSecond().equals(OperandType.EQUALS);
+    private static boolean isEqualsOperand(OperandBuffer operands, int index) {
+        return operands.getOperationSecond(index).equals(OperandType.EQUALS);
     }
 }
@@ -0,0 +1,47 @@
+package nio;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Evaluates expressions of at least {@code threshold} operands with {@link AffineReduction} on the pool
+ * and everything else, including expressions that can't be reduced to affine maps, with the sequential evaluator.
+ */
+public class ParallelExpressionEvaluator implements ExpressionEvaluator {
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int chunkSize;
+    private final ExpressionEvaluator sequentialEvaluator;
+
+    public ParallelExpressionEvaluator(ForkJoinPool pool, int threshold, int chunkSize, ExpressionEvaluator sequentialEvaluator) {
+        if (pool == null || sequentialEvaluator == null) {
+            throw new NullPointerException();
+        }
+        if (threshold <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+        this.chunkSize = chunkSize;
+        this.sequentialEvaluator = sequentialEvaluator;
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands) {
+        return evaluate(operands, PrecisionMode.EXACT);
+    }
+
+    /**
+     * The affine reduction uses the exact kernels in every mode.
+     */
+    @Override
+    public double evaluate(OperandBuffer operands, PrecisionMode precisionMode) {
+        if (operands.size() >= threshold) {
+            Double result = AffineReduction.calculate(operands, pool, chunkSize);
+            if (result != null) {
+                return result;
+            }
+        }
+        return sequentialEvaluator.evaluate(operands, precisionMode);
+    }
+}
@@ -0,0 +1,193 @@
+package nio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One stage of the server pipeline: a bounded queue drained by a fixed set of worker threads.
+ * Submitting to a full queue parks with a bounded backoff until there is space, so a slow stage pushes back
+ * on the stage before it; the selector threads use {@link #trySubmit(Object)} instead and stop reading
+ * the connection. Every offer a full queue turns down is counted as a rejection.
+ */
+public class PipelineStage<T> {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MIN_FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final String name;
+    private final StageQueue<T> queue;
+    private final StageHandler<T> handler;
+    private final List<Worker> workers;
+    private final Queue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean running = true;
+
+    public PipelineStage(String name, int workersCount, StageQueue<T> queue, StageHandler<T> handler) {
+        if (name == null || queue == null || handler == null) {
+            throw new NullPointerException();
+        }
+        if (workersCount <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.name = name;
+        this.queue = queue;
+        this.handler = handler;
+        workers = new ArrayList<>(workersCount);
+        for (int i = 0; i < workersCount; i++) {
+            workers.add(new Worker(name + "-stage-" + i));
+        }
+    }
+
+    public void start() {
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    public void close() {
+        running = false;
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+    }
+
+    public void submit(T item) {
+        long parkNanos = MIN_FULL_PARK_NANOS;
+        while (!trySubmit(item)) {
+            if (!running) {
+                return;
+            }
+            LockSupport.parkNanos(this, parkNanos);
+            parkNanos = Math.min(parkNanos * 2, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Submits without waiting; returns false, counting a rejection, when the queue is full.
+     */
+    public boolean trySubmit(T item) {
+        if (!queue.offer(item)) {
+            rejected.incrementAndGet();
+            wakeIdleWorker();
+            return false;
+        }
+        int depth = queue.size();
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+        wakeIdleWorker();
+        return true;
+    }
+
+    /**
+     * Whether a submit would be turned down now; other submitters may fill the queue right after.
+     */
+    public boolean isFull() {
+        return queue.size() >= queue.capacity();
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(name, workers.size(), queue.size(), maxQueueDepth.get(), processed.get(), rejected.get());
+    }
+
+    private void wakeIdleWorker() {
+        Worker worker = idleWorkers.poll();
+        if (worker != null) {
+            worker.idle.set(false);
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final Thread thread;
+        private final AtomicBoolean idle = new AtomicBoolean();
+
+        Worker(String threadName) {
+            thread = new Thread(this, threadName);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                T item = queue.poll();
+                if (item == null) {
+                    if (idle.compareAndSet(false, true)) {
+                        idleWorkers.add(this);
+                    }
+                    item = queue.poll();
+                    if (item == null) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        continue;
+                    }
+                }
+                try {
+                    handler.handle(item);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                processed.incrementAndGet();
+            }
+        }
+    }
+
+    public interface StageHandler<T> {
+        void handle(T item);
+    }
+
+    public static class Metrics {
+        private final String name;
+        private final int workers;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final long processed;
+        private final long rejected;
+
+        public Metrics(String name, int workers, int queueDepth, int maxQueueDepth, long processed, long rejected) {
+            this.name = name;
+            this.workers = workers;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.processed = processed;
+            this.rejected = rejected;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": workers=" + workers + " depth=" + queueDepth + " maxDepth=" + maxQueueDepth + " processed=" + processed + " rejected=" + rejected;
+        }
+    }
+}
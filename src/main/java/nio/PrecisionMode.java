@@ -0,0 +1,15 @@
+package nio;
+
+/**
+ * Precision of the transcendental operations of one calculation, sent in the metadata frame.
+ */
+public enum PrecisionMode {
+    /**
+     * {@link Math} kernels.
+     */
+    EXACT,
+    /**
+     * {@link FastMath} approximations with the error bounds documented there.
+     */
+    FAST
+}
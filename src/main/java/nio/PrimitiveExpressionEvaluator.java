@@ -0,0 +1,32 @@
+package nio;
+
+/**
+ * Default engine: a single left fold over the primitive arrays of the buffer,
+ * with switch-dispatched kernels and no allocation per operand.
+ * The transcendental kernels can go through an optional {@link UnaryMemoTable}.
+ */
+public class PrimitiveExpressionEvaluator implements ExpressionEvaluator {
+
+    private final UnaryMemoTable unaryMemoTable;
+
+    public PrimitiveExpressionEvaluator() {
+        this(null);
+    }
+
+    public PrimitiveExpressionEvaluator(UnaryMemoTable unaryMemoTable) {
+        this.unaryMemoTable = unaryMemoTable;
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands) {
+        return OperandsParser.parseAndCalculate(operands, unaryMemoTable);
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands, PrecisionMode precisionMode) {
+        if (precisionMode == PrecisionMode.FAST) {
+            return OperandsParser.parseAndCalculate(operands, precisionMode);
+        }
+        return evaluate(operands);
+    }
+}
@@ -0,0 +1,6 @@
+package nio;
+
+public enum ReactorBalancing {
+    ROUND_ROBIN,
+    LEAST_CONNECTIONS
+}
@@ -0,0 +1,122 @@
+package nio;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Coalesces requests into batches bounded by size in bytes: the first request opens a batch, which is closed
+ * once the next request would not fit or the batch has lingered for {@code maxLingerMicros}.
+ * A request that does not fit is carried over to open the next batch. Batches are taken by a single thread.
+ */
+public class RequestBatcher<T> {
+
+    private final BlockingQueue<T> queue = new LinkedBlockingQueue<>();
+    private final ToIntFunction<T> sizer;
+    private final int maxBatchBytes;
+    private final long maxLingerNanos;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private T carried;
+
+    public RequestBatcher(int maxBatchBytes, long maxLingerMicros, ToIntFunction<T> sizer) {
+        if (sizer == null) {
+            throw new NullPointerException();
+        }
+        if (maxBatchBytes <= 0 || maxLingerMicros < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.sizer = sizer;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+    }
+
+    public void add(T request) {
+        if (request == null) {
+            throw new NullPointerException();
+        }
+        queue.add(request);
+    }
+
+    public void nextBatch(List<T> batch) throws InterruptedException {
+        T first = carried != null ? carried : queue.take();
+        carried = null;
+        batch.add(first);
+        int batchBytes = sizer.applyAsInt(first);
+        long deadline = System.nanoTime() + maxLingerNanos;
+        while (true) {
+            T next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || (next = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null) {
+                    break;
+                }
+            }
+            int nextBytes = sizer.applyAsInt(next);
+            if (batchBytes + nextBytes > maxBatchBytes) {
+                carried = next;
+                break;
+            }
+            batch.add(next);
+            batchBytes += nextBytes;
+        }
+        batches.incrementAndGet();
+        requests.addAndGet(batch.size());
+        bytes.addAndGet(batchBytes);
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(maxBatchBytes, batches.get(), requests.get(), bytes.get());
+    }
+
+    public static class Metrics {
+        private final int maxBatchBytes;
+        private final long batches;
+        private final long requests;
+        private final long bytes;
+
+        public Metrics(int maxBatchBytes, long batches, long requests, long bytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            this.batches = batches;
+            this.requests = requests;
+            this.bytes = bytes;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getAverageBatchSize() {
+            return batches == 0 ? 0 : (double) requests / batches;
+        }
+
+        /**
+         * Average share of {@code maxBatchBytes} used by a batch.
+         */
+        public double getFillRatio() {
+            return batches == 0 ? 0 : (double) bytes / ((double) batches * maxBatchBytes);
+        }
+
+        @Override
+        public String toString() {
+            return "batches=" + batches + " requests=" + requests + " averageBatchSize=" + getAverageBatchSize()
+                    + " fillRatio=" + getFillRatio();
+        }
+    }
+}
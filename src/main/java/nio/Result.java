@@ -2,14 +2,40 @@ package nio;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
-public class Result implements Serializable {
+/**
+ * Pending answer of one calculation. A cancelled result reads as {@code NaN} instead of throwing
+ * {@link java.util.concurrent.CancellationException}, and {@link #get()} never throws
+ * {@link java.util.concurrent.ExecutionException}; so does a result closed or timed out before its answer arrived.
+ * <p>
+ * Completion is lock-free: DONE, CANCEL, CLOSE and TIMEOUT are terminal states, state changes are CAS-ed
+ * so the first terminal state wins and a completed result never changes again, and reaching a terminal state
+ * swaps out the stack of parked waiters and unparks all of them.
+ */
+public class Result implements Future<Double>, Serializable {
+
+    private static final AtomicReferenceFieldUpdater<Result, ClientState> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(Result.class, ClientState.class, "state");
+    private static final AtomicReferenceFieldUpdater<Result, WaitNode> WAITERS =
+            AtomicReferenceFieldUpdater.newUpdater(Result.class, WaitNode.class, "waiters");
+    private static final WaitNode COMPLETED = new WaitNode(null);
 
     private final int id;
     private volatile double result;
-    private volatile boolean isWaiting = false;
+    private volatile boolean answered = false;
     private volatile Client client;
     private volatile ClientState state = ClientState.START;
+    private transient volatile WaitNode waiters;
+    private transient volatile CompletableFuture<Double> completion;
+    private transient volatile Executor completionExecutor;
+    private transient volatile HashedWheelTimer.Timeout timeout;
 
 
     public Result(int id) {
@@ -21,20 +47,29 @@ public class Result implements Serializable {
     }
 
 
-    public synchronized double get() throws InterruptedException {
+    @Override
+    public Double get() throws InterruptedException {
+        if (state.equals(ClientState.CANCEL)) {
+            return Double.NaN;
+        }
+        awaitCompletion(false, 0);
+        return report();
+    }
+
+    @Override
+    public Double get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
         if (state.equals(ClientState.CANCEL)) {
             return Double.NaN;
         }
-        if (!state.equals(ClientState.DONE)) {
-            isWaiting = true;
-            wait();
-            isWaiting = false;
+        if (!awaitCompletion(true, unit.toNanos(timeout))) {
+            throw new TimeoutException();
         }
-        return result;
+        return report();
     }
 
     public void set(double result) {
         this.result = result;
+        answered = true;
     }
 
     public Double getNonBlocking() {
@@ -53,15 +88,205 @@ public class Result implements Serializable {
         }
     }
 
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        cancel();
+        return isCancelled();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state.equals(ClientState.CANCEL);
+    }
+
+    @Override
+    public boolean isDone() {
+        return isTerminal(state);
+    }
+
     public boolean isWaiting() {
-        return isWaiting;
+        WaitNode head = waiters;
+        return head != null && head != COMPLETED;
     }
 
+    /**
+     * Moves to {@code state}, unless this result is already done.
+     * Reaching a terminal state wakes every waiter and completes the future of {@link #toCompletableFuture(Executor)}.
+     */
     public void setState(ClientState state) {
-        this.state = state;
+        ClientState current;
+        do {
+            current = this.state;
+            if (isTerminal(current)) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, state));
+        if (isTerminal(state)) {
+            complete();
+        }
+    }
+
+    /**
+     * Moves to TIMEOUT unless this result is already done.
+     */
+    boolean timeOut() {
+        ClientState current;
+        do {
+            current = state;
+            if (isTerminal(current)) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, ClientState.TIMEOUT));
+        complete();
+        return true;
+    }
+
+    /**
+     * The timeout is cancelled as soon as this result is done.
+     */
+    void setTimeout(HashedWheelTimer.Timeout timeout) {
+        this.timeout = timeout;
+        if (isDone()) {
+            timeout.cancel();
+        }
     }
 
     public void setClient(Client client) {
         this.client = client;
     }
+
+    /**
+     * Returns a future completed when this result is done; it is completed on {@code executor},
+     * so its dependent stages never run on the thread that receives answers.
+     */
+    CompletableFuture<Double> toCompletableFuture(Executor executor) {
+        CompletableFuture<Double> future = new CompletableFuture<>();
+        completionExecutor = executor;
+        completion = future;
+        fireCompletion();
+        return future;
+    }
+
+    private void complete() {
+        HashedWheelTimer.Timeout currentTimeout = timeout;
+        if (currentTimeout != null) {
+            currentTimeout.cancel();
+        }
+        releaseWaiters();
+        fireCompletion();
+    }
+
+    private void fireCompletion() {
+        CompletableFuture<Double> future = completion;
+        if (future == null || !isDone()) {
+            return;
+        }
+        ClientState finalState = state;
+        double value = result;
+        completionExecutor.execute(() -> {
+            if (finalState.equals(ClientState.DONE)) {
+                future.complete(value);
+            } else if (finalState.equals(ClientState.TIMEOUT)) {
+                future.completeExceptionally(new TimeoutException());
+            } else {
+                future.cancel(false);
+            }
+        });
+    }
+
+    private Double report() {
+        return state.equals(ClientState.CANCEL) || !answered ? Double.NaN : result;
+    }
+
+    /**
+     * Parks until a terminal state is reached; returns false if {@code nanos} ran out first.
+     */
+    private boolean awaitCompletion(boolean timed, long nanos) throws InterruptedException {
+        long deadline = timed ? System.nanoTime() + nanos : 0;
+        WaitNode node = null;
+        boolean queued = false;
+        while (true) {
+            WaitNode head = waiters;
+            if (head == COMPLETED) {
+                return true;
+            }
+            if (Thread.interrupted()) {
+                removeWaiter(node);
+                throw new InterruptedException();
+            }
+            if (node == null) {
+                node = new WaitNode(Thread.currentThread());
+            } else if (!queued) {
+                node.next = head;
+                queued = WAITERS.compareAndSet(this, head, node);
+            } else if (timed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    removeWaiter(node);
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Unlinks {@code node} and any other waiter that left, so callers polling with a timeout do not pile up nodes.
+     */
+    private void removeWaiter(WaitNode node) {
+        if (node == null) {
+            return;
+        }
+        node.thread = null;
+        retry:
+        while (true) {
+            WaitNode pred = null;
+            WaitNode next;
+            for (WaitNode current = waiters; current != null && current != COMPLETED; current = next) {
+                next = current.next;
+                if (current.thread != null) {
+                    pred = current;
+                } else if (pred != null) {
+                    pred.next = next;
+                    if (pred.thread == null) {
+                        continue retry;
+                    }
+                } else if (!WAITERS.compareAndSet(this, current, next)) {
+                    continue retry;
+                }
+            }
+            return;
+        }
+    }
+
+    private void releaseWaiters() {
+        WaitNode head = WAITERS.getAndSet(this, COMPLETED);
+        while (head != null && head != COMPLETED) {
+            Thread thread = head.thread;
+            if (thread != null) {
+                head.thread = null;
+                LockSupport.unpark(thread);
+            }
+            head = head.next;
+        }
+    }
+
+    private static boolean isTerminal(ClientState state) {
+        return state.equals(ClientState.DONE) || state.equals(ClientState.CANCEL) || state.equals(ClientState.CLOSE)
+                || state.equals(ClientState.TIMEOUT);
+    }
+
+    private static class WaitNode {
+        private volatile Thread thread;
+        private volatile WaitNode next;
+
+        WaitNode(Thread thread) {
+            this.thread = thread;
+        }
+    }
 }
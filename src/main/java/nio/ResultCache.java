@@ -0,0 +1,247 @@
+package nio;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of expression results keyed by {@link ExpressionHash}, with W-TinyLFU eviction:
+ * new entries go to a small LRU window, and an entry evicted from the window enters the main
+ * segmented LRU (probation and protected) only if its estimated frequency is higher than that of
+ * the main victim. Frequencies come from a count-min sketch of 4-bit counters that is halved
+ * periodically so old popularity fades. Entries expire {@code ttlNanos} after they were written.
+ */
+public class ResultCache {
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int MAX_FREQUENCY = 15;
+    private static final long[] SKETCH_SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final int mainCapacity;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<ExpressionHash, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<ExpressionHash, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<ExpressionHash, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final byte[][] sketch;
+    private final int sketchMask;
+    private final int sampleSize;
+    private int sketchAdditions;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejected;
+    private long expirations;
+
+    public ResultCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::nanoTime);
+    }
+
+    ResultCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        if (clock == null) {
+            throw new NullPointerException();
+        }
+        if (maxSize <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        windowCapacity = Math.max(1, maxSize / 100);
+        mainCapacity = maxSize - windowCapacity;
+        protectedCapacity = mainCapacity * 4 / 5;
+        ttlNanos = ttlMillis * 1_000_000;
+        this.clock = clock;
+        int width = Integer.highestOneBit(Math.max(16, maxSize) - 1) << 1;
+        sketch = new byte[SKETCH_DEPTH][width];
+        sketchMask = width - 1;
+        sampleSize = 10 * maxSize;
+    }
+
+    /**
+     * Returns the cached result or null on a miss.
+     */
+    public synchronized Double get(ExpressionHash key) {
+        increment(key);
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = protectedSegment.get(key);
+        }
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry != null) {
+                promote(key, entry);
+            }
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (clock.getAsLong() - entry.writtenAt >= ttlNanos) {
+            window.remove(key);
+            probation.remove(key);
+            protectedSegment.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    public synchronized void put(ExpressionHash key, double result) {
+        Entry entry = new Entry(result, clock.getAsLong());
+        if (window.containsKey(key)) {
+            window.put(key, entry);
+            return;
+        }
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, entry);
+            return;
+        }
+        if (probation.containsKey(key)) {
+            probation.put(key, entry);
+            return;
+        }
+        increment(key);
+        window.put(key, entry);
+        if (window.size() > windowCapacity) {
+            Map.Entry<ExpressionHash, Entry> candidate = removeEldest(window);
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(size(), hits, misses, evictions, rejected, expirations);
+    }
+
+    int frequency(ExpressionHash key) {
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            frequency = Math.min(frequency, sketch[i][index(key, i)]);
+        }
+        return frequency;
+    }
+
+    private void admit(ExpressionHash key, Entry entry) {
+        if (mainCapacity == 0) {
+            evictions++;
+            return;
+        }
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.put(key, entry);
+            return;
+        }
+        LinkedHashMap<ExpressionHash, Entry> victims = probation.isEmpty() ? protectedSegment : probation;
+        ExpressionHash victim = victims.keySet().iterator().next();
+        if (frequency(key) > frequency(victim)) {
+            victims.remove(victim);
+            probation.put(key, entry);
+        } else {
+            rejected++;
+        }
+        evictions++;
+    }
+
+    private void promote(ExpressionHash key, Entry entry) {
+        protectedSegment.put(key, entry);
+        if (protectedSegment.size() > protectedCapacity) {
+            Map.Entry<ExpressionHash, Entry> demoted = removeEldest(protectedSegment);
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    private static Map.Entry<ExpressionHash, Entry> removeEldest(LinkedHashMap<ExpressionHash, Entry> segment) {
+        Iterator<Map.Entry<ExpressionHash, Entry>> iterator = segment.entrySet().iterator();
+        Map.Entry<ExpressionHash, Entry> eldest = iterator.next();
+        Map.Entry<ExpressionHash, Entry> copy = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return copy;
+    }
+
+    private void increment(ExpressionHash key) {
+        boolean added = false;
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            int index = index(key, i);
+            if (sketch[i][index] < MAX_FREQUENCY) {
+                sketch[i][index]++;
+                added = true;
+            }
+        }
+        if (added && ++sketchAdditions >= sampleSize) {
+            for (byte[] row : sketch) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>= 1;
+                }
+            }
+            sketchAdditions /= 2;
+        }
+    }
+
+    private int index(ExpressionHash key, int row) {
+        long hash = (key.sketchHash() + SKETCH_SEEDS[row]) * SKETCH_SEEDS[row];
+        return (int) (hash >>> 32) & sketchMask;
+    }
+
+    private static class Entry {
+        private final double result;
+        private final long writtenAt;
+
+        Entry(double result, long writtenAt) {
+            this.result = result;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    public static class Metrics {
+        private final int size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long rejected;
+        private final long expirations;
+
+        public Metrics(int size, long hits, long misses, long evictions, long rejected, long expirations) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.rejected = rejected;
+            this.expirations = expirations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + " hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                    + " rejected=" + rejected + " expirations=" + expirations;
+        }
+    }
+}
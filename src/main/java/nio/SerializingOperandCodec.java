@@ -0,0 +1,47 @@
+package nio;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import static nio.ObjectSerializer.deserialize;
+import static nio.ObjectSerializer.serialize;
+
+/**
+ * Length-prefixed Java serialization of operands, kept for peers that still speak the old wire format.
+ */
+public class SerializingOperandCodec implements OperandCodec {
+
+    @Override
+    public int encodedSize(Operand operand) {
+        return Integer.BYTES + toBytes(operand).length;
+    }
+
+    @Override
+    public void encode(Operand operand, ByteBuffer buffer) {
+        byte[] bytes = toBytes(operand);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    @Override
+    public Operand decode(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        try {
+            return (Operand) deserialize(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toBytes(Operand operand) {
+        try {
+            return serialize(operand);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
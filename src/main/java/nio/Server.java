@@ -1,73 +1,162 @@
 package nio;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
-import static nio.ObjectSerializer.deserialize;
-
 public class Server {
 
-    private static final int BUFFER_SIZE = 1536;
+    private static final int ANSWER_FRAME_BYTES = Frames.HEADER_BYTES + 2 * Integer.BYTES + Double.BYTES;
     private static final int META_DATA_REQUEST_CODE = 0;
     private static final int CALCULATING_REQUEST_CODE = 1;
+    private static final int BATCH_REQUEST_CODE = 2;
+    private static final int BATCH_ANSWER_ENTRY_BYTES = Integer.BYTES + Double.BYTES;
+    private static final int CLOSE_ANSWER_FRAME_BYTES = Frames.HEADER_BYTES + Integer.BYTES;
     private static final int CANCELLING_REQUEST_CODE = -1;
     private static final int CLOSE_CLIENT_REQUEST_CODE = -2;
+    private static final int INBOUND_CHANNEL_ANSWER_PORT = 0;
+    private static final int COMPILE_AFTER_SHAPE_HITS = 2;
+    private static final long NO_DEADLINE = 0;
+    private static final PrecisionMode[] PRECISION_MODES = PrecisionMode.values();
 
     private final Map<Integer, ServerOperation> resultsMap = new ConcurrentHashMap<>();
     private final Map<Integer, ClientInfo> clientsResultsMap = new ConcurrentHashMap<>();
     private final int[] serverPorts;
-    private final ExecutorService calculatingExecutor;
-    private final ExecutorService preparingForCalculatingExecutor;
-    private final BlockingQueue<ServerAnswer> readyForSendingResultsQueue = new LinkedBlockingQueue<>();
-    private SocketChannel answerChannel;
+    private final OperandCodec operandCodec;
+    private final PipelineStage<ByteBuffer> decodeStage;
+    private final PipelineStage<DecodedChunk> assembleStage;
+    private final List<PipelineStage<Integer>> evaluateStages;
+    private final long[] evaluationLaneCostThresholds;
+    private final ExpressionCostModel expressionCostModel;
+    private final long fairQueuingQuantum;
+    private final Map<Integer, Integer> clientWeights;
+    private final List<DeficitRoundRobinQueue<?>> fairQueues = new ArrayList<>();
+    private final PipelineStage<BatchRequest> batchStage;
+    private final ForkJoinPool evaluationPool;
+    private final ExpressionEvaluator expressionEvaluator;
+    private final ResultCache resultCache;
+    private final UnaryMemoTable unaryMemoTable;
+    private final AnswerConnectionPool answerConnectionPool;
+    private final AnswerBatcher<ServerAnswer> answerBatcher;
+    private final IoReactor[] ioReactors;
+    private final ReactorBalancing reactorBalancing;
+    private int nextReactor = 0;
     private final Thread listeningClientsThread;
     private final Thread createAnswerThread;
+    private final AtomicLong expiredOperations = new AtomicLong();
+    private final AtomicLong droppedAtDecode = new AtomicLong();
+    private final AtomicLong droppedAtAssemble = new AtomicLong();
+    private final AtomicLong droppedAtEvaluate = new AtomicLong();
+    private final AtomicLong droppedAtAnswer = new AtomicLong();
+    private final AtomicLong savedOperands = new AtomicLong();
 
     public Server(int[] serverPorts, int calculateThreadsCount) {
-        if (serverPorts == null) {
+        this(serverPorts, calculateThreadsCount, new ServerConfig());
+    }
+
+    public Server(int[] serverPorts, int calculateThreadsCount, ServerConfig config) {
+        if (serverPorts == null || config == null) {
             throw new NullPointerException();
         }
         if (Arrays.stream(serverPorts).anyMatch(value -> value<=0)) {
             throw new IllegalArgumentException();
         }
-        if (calculateThreadsCount < 0) {
+        if (calculateThreadsCount <= 0) {
             throw new IllegalArgumentException();
         }
         this.serverPorts = serverPorts;
-        preparingForCalculatingExecutor = Executors.newSingleThreadExecutor();
-        if (calculateThreadsCount == 1) {
-            calculatingExecutor = preparingForCalculatingExecutor;
+        operandCodec = config.getOperandCodec();
+        answerConnectionPool = new AnswerConnectionPool(config.getAnswerConnectionIdleTimeoutMillis());
+        answerBatcher = new AnswerBatcher<>(new MpmcArrayQueue<>(config.getStageQueueCapacity()),
+                config.getAnswerBatchSize(), config.getAnswerLingerMicros());
+        decodeStage = new PipelineStage<>("decode", config.getDecodeWorkersCount(),
+                new MpmcArrayQueue<>(config.getStageQueueCapacity()), this::decodeChunk);
+        assembleStage = new PipelineStage<>("assemble", config.getAssembleWorkersCount(),
+                new MpmcArrayQueue<>(config.getStageQueueCapacity()), this::assembleChunk);
+        fairQueuingQuantum = config.getFairQueuingQuantum();
+        clientWeights = config.getClientWeights();
+        evaluationLaneCostThresholds = config.getEvaluationLaneCostThresholds();
+        expressionCostModel = evaluationLaneCostThresholds.length > 0 ? config.getExpressionCostModel() : null;
+        int evaluationWorkersCount = Math.max(1, calculateThreadsCount - 1);
+        evaluateStages = createEvaluateStages(config, evaluationWorkersCount);
+        batchStage = new PipelineStage<>("batch", evaluationWorkersCount,
+                createBatchQueue(config), this::calculateBatchAndQueueForSending);
+        unaryMemoTable = config.getUnaryMemoTableSize() > 0 ? new UnaryMemoTable(config.getUnaryMemoTableSize()) : null;
+        ExpressionEvaluator sequentialEvaluator = config.getExpressionEvaluator() != null
+                ? config.getExpressionEvaluator()
+                : new PrimitiveExpressionEvaluator(unaryMemoTable);
+        if (config.getColumnarEvaluationThreshold() > 0 && config.getExpressionEvaluator() == null && unaryMemoTable == null) {
+            sequentialEvaluator = new ColumnarExpressionEvaluator(config.getColumnarEvaluationThreshold(), sequentialEvaluator);
+        }
+        if (config.getCompiledPlanCacheSize() > 0 && config.getExpressionEvaluator() == null) {
+            sequentialEvaluator = new CompiledExpressionEvaluator(config.getCompiledPlanCacheSize(),
+                    config.getCompiledPlanMaxOperands(), COMPILE_AFTER_SHAPE_HITS, sequentialEvaluator, unaryMemoTable);
+        }
+        if (config.getParallelEvaluationThreshold() > 0) {
+            evaluationPool = new ForkJoinPool(calculateThreadsCount);
+            expressionEvaluator = new ParallelExpressionEvaluator(evaluationPool, config.getParallelEvaluationThreshold(),
+                    config.getParallelEvaluationChunkSize(), sequentialEvaluator);
         } else {
-            calculatingExecutor = Executors.newFixedThreadPool(calculateThreadsCount - 1);
+            evaluationPool = null;
+            expressionEvaluator = sequentialEvaluator;
+        }
+        resultCache = config.getResultCacheSize() > 0 ? new ResultCache(config.getResultCacheSize(), config.getResultCacheTtlMillis()) : null;
+        reactorBalancing = config.getReactorBalancing();
+        ioReactors = new IoReactor[config.getIoReactorsCount()];
+        try {
+            for (int i = 0; i < ioReactors.length; i++) {
+                ioReactors[i] = new IoReactor("server-io-reactor-" + i, this::processFrame);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         listeningClientsThread = createListeningClientsThread();
         createAnswerThread = createAnswerThread();
     }
 
     public void start() {
+        decodeStage.start();
+        assembleStage.start();
+        evaluateStages.forEach(PipelineStage::start);
+        batchStage.start();
+        for (IoReactor ioReactor : ioReactors) {
+            ioReactor.start();
+        }
         listeningClientsThread.start();
         createAnswerThread.start();
     }
 
     public void close() {
         listeningClientsThread.interrupt();
+        for (IoReactor ioReactor : ioReactors) {
+            ioReactor.close();
+        }
+        decodeStage.close();
+        assembleStage.close();
+        evaluateStages.forEach(PipelineStage::close);
+        batchStage.close();
+        if (evaluationPool != null) {
+            evaluationPool.shutdownNow();
+        }
+        answerBatcher.close();
         createAnswerThread.interrupt();
+        answerConnectionPool.close();
     }
 
     private Thread createListeningClientsThread() {
         return new Thread(() -> {
+            Map<SelectionKey, ServerSocketChannel> receivingChannels = new HashMap<>();
             try (Selector selector = Selector.open()) {
-                Map<SelectionKey, ServerSocketChannel> receivingChannels = new HashMap<>();
                 for (int port : serverPorts) {
                     ServerSocketChannel serverSocket = ServerSocketChannel.open();
                     serverSocket.bind(new InetSocketAddress("localhost", port));
@@ -75,177 +164,410 @@ public class Server {
                     SelectionKey receivingChannelKey = serverSocket.register(selector, SelectionKey.OP_ACCEPT);
                     receivingChannels.put(receivingChannelKey, serverSocket);
                 }
-                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-                while (true) {
+                while (!Thread.currentThread().isInterrupted()) {
                     selector.select();
                     Set<SelectionKey> selectionKeys = selector.selectedKeys();
                     Iterator<SelectionKey> iter = selectionKeys.iterator();
                     while (iter.hasNext()) {
                         SelectionKey key = iter.next();
                         if (key.isAcceptable()) {
-                            register(selector, receivingChannels.get(key));
-                        }
-                        if (key.isReadable()) {
-                            answer(buffer, key);
+                            register(receivingChannels.get(key));
                         }
                         iter.remove();
                     }
                 }
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException e) {
                 e.printStackTrace();
+            } finally {
+                for (ServerSocketChannel serverSocket : receivingChannels.values()) {
+                    try {
+                        serverSocket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
             }
         });
     }
 
     private Thread createAnswerThread() {
         return new Thread(() -> {
+            List<ServerAnswer> batch = new ArrayList<>(answerBatcher.getMaxBatchSize());
+            Map<Integer, List<ServerAnswer>> answersByPort = new LinkedHashMap<>();
+            Map<SocketChannel, List<ServerAnswer>> answersByChannel = new LinkedHashMap<>();
+            ByteBuffer answerBuffer = ByteBuffer.allocateDirect(answerBatcher.getMaxBatchSize() * ANSWER_FRAME_BYTES);
             try {
                 while (true) {
-                    ServerAnswer serverAnswer = readyForSendingResultsQueue.take();
-                    answerChannel = SocketChannel.open(new InetSocketAddress("localhost", resultsMap.get(serverAnswer.id).getAnswerPort()));
-                    ByteBuffer answerBuffer = ByteBuffer.allocate(BUFFER_SIZE);
-                    answerBuffer.putInt(CALCULATING_REQUEST_CODE);
-                    answerBuffer.putInt(serverAnswer.id);
-                    answerBuffer.putDouble(serverAnswer.result);
-                    answerBuffer.flip();
-                    ServerOperation serverOperation = resultsMap.get(serverAnswer.id);
-                    synchronized (resultsMap) {
-                        if (!serverOperation.getServerState().equals(ServerState.CANCEL) && !serverOperation.getServerState().equals(ServerState.CLOSE)) {
-                            serverOperation.setServerState(ServerState.SENDING);
+                    answerBatcher.nextBatch(batch);
+                    for (ServerAnswer serverAnswer : batch) {
+                        if (serverAnswer.close) {
+                            if (serverAnswer.answerChannel != null) {
+                                answersByChannel.computeIfAbsent(serverAnswer.answerChannel, channel -> new ArrayList<>()).add(serverAnswer);
+                            } else {
+                                answersByPort.computeIfAbsent(serverAnswer.answerPort, port -> new ArrayList<>()).add(serverAnswer);
+                            }
+                            continue;
+                        }
+                        ServerOperation serverOperation = resultsMap.get(serverAnswer.id);
+                        if (serverAnswer.batchIds == null && dropIfExpired(serverOperation)) {
+                            droppedAtAnswer.incrementAndGet();
+                            continue;
+                        }
+                        if (serverOperation.getAnswerChannel() != null) {
+                            answersByChannel.computeIfAbsent(serverOperation.getAnswerChannel(), channel -> new ArrayList<>()).add(serverAnswer);
+                        } else {
+                            answersByPort.computeIfAbsent(serverOperation.getAnswerPort(), port -> new ArrayList<>()).add(serverAnswer);
                         }
                     }
-                    answerChannel.write(answerBuffer);
-                    synchronized (resultsMap) {
-                        if (!serverOperation.getServerState().equals(ServerState.CANCEL) && !serverOperation.getServerState().equals(ServerState.CLOSE)) {
-                            serverOperation.setServerState(ServerState.DONE);
+                    for (Map.Entry<Integer, List<ServerAnswer>> portAnswers : answersByPort.entrySet()) {
+                        int answerPort = portAnswers.getKey();
+                        sendAnswers(portAnswers.getValue(), answerBuffer, buffer -> answerConnectionPool.write(answerPort, buffer));
+                        if (portAnswers.getValue().get(portAnswers.getValue().size() - 1).close) {
+                            answerConnectionPool.release(answerPort);
                         }
                     }
-                    answerBuffer.clear();
+                    for (Map.Entry<SocketChannel, List<ServerAnswer>> channelAnswers : answersByChannel.entrySet()) {
+                        SocketChannel answerChannel = channelAnswers.getKey();
+                        sendAnswers(channelAnswers.getValue(), answerBuffer, buffer -> writeToInboundChannel(answerChannel, buffer));
+                    }
+                    batch.clear();
+                    answersByPort.clear();
+                    answersByChannel.clear();
                 }
-            } catch (IOException | InterruptedException e) {
+            } catch (InterruptedException e) {
 
             }
         });
     }
 
-    private void register(Selector selector, ServerSocketChannel serverSocket) throws IOException {
+    private void sendAnswers(List<ServerAnswer> answers, ByteBuffer answerBuffer, AnswerWriter answerWriter) {
+        int answerBytes = 0;
+        for (ServerAnswer serverAnswer : answers) {
+            answerBytes += serverAnswer.encodedSize();
+        }
+        ByteBuffer buffer = answerBytes <= answerBuffer.capacity() ? answerBuffer : ByteBuffer.allocate(answerBytes);
+        buffer.clear();
+        for (ServerAnswer serverAnswer : answers) {
+            if (serverAnswer.close) {
+                buffer.putInt(CLOSE_ANSWER_FRAME_BYTES - Frames.HEADER_BYTES);
+                buffer.putInt(CLOSE_CLIENT_REQUEST_CODE);
+                continue;
+            }
+            if (serverAnswer.batchIds == null) {
+                buffer.putInt(ANSWER_FRAME_BYTES - Frames.HEADER_BYTES);
+                buffer.putInt(CALCULATING_REQUEST_CODE);
+                buffer.putInt(serverAnswer.id);
+                buffer.putDouble(serverAnswer.result);
+                setAnswerState(serverAnswer.id, ServerState.SENDING);
+                continue;
+            }
+            buffer.putInt(serverAnswer.encodedSize() - Frames.HEADER_BYTES);
+            buffer.putInt(BATCH_REQUEST_CODE);
+            buffer.putInt(serverAnswer.batchIds.length);
+            for (int i = 0; i < serverAnswer.batchIds.length; i++) {
+                buffer.putInt(serverAnswer.batchIds[i]);
+                buffer.putDouble(serverAnswer.batchResults[i]);
+                setAnswerState(serverAnswer.batchIds[i], ServerState.SENDING);
+            }
+        }
+        buffer.flip();
+        try {
+            answerWriter.write(buffer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (ServerAnswer serverAnswer : answers) {
+            if (serverAnswer.close) {
+                continue;
+            }
+            if (serverAnswer.batchIds == null) {
+                setAnswerState(serverAnswer.id, ServerState.DONE);
+                continue;
+            }
+            for (int resultId : serverAnswer.batchIds) {
+                setAnswerState(resultId, ServerState.DONE);
+            }
+        }
+    }
+
+    private void setAnswerState(int resultId, ServerState serverState) {
+        ServerOperation serverOperation = resultsMap.get(resultId);
+        synchronized (resultsMap) {
+            if (!serverOperation.getServerState().equals(ServerState.CANCEL) && !serverOperation.getServerState().equals(ServerState.CLOSE)
+                    && !serverOperation.getServerState().equals(ServerState.EXPIRED)) {
+                serverOperation.setServerState(serverState);
+            }
+        }
+    }
+
+    /**
+     * Moves an operation whose deadline has passed to EXPIRED, unless it is already answered or closed.
+     * Returns true if the operation is expired, so the calling stage drops it.
+     */
+    private boolean dropIfExpired(ServerOperation serverOperation) {
+        if (!serverOperation.isExpired(System.nanoTime())) {
+            return false;
+        }
+        synchronized (resultsMap) {
+            ServerState serverState = serverOperation.getServerState();
+            if (serverState.equals(ServerState.DONE) || serverState.equals(ServerState.CLOSE)) {
+                return false;
+            }
+            if (!serverState.equals(ServerState.EXPIRED)) {
+                serverOperation.setServerState(ServerState.EXPIRED);
+                expiredOperations.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    private void register(ServerSocketChannel serverSocket) throws IOException {
         SocketChannel client = serverSocket.accept();
-        client.configureBlocking(false);
-        client.register(selector, SelectionKey.OP_READ);
+        if (client != null) {
+            chooseReactor().assign(client);
+        }
     }
 
-    private void answer(ByteBuffer buffer, SelectionKey key) throws IOException, ClassNotFoundException {
-        SocketChannel client = (SocketChannel) key.channel();
-        client.read(buffer);
-        buffer.flip();
+    /**
+     * Queues the write on the reactor that owns the connection, so a client that reads slowly
+     * never holds up the answers of the others.
+     */
+    private void writeToInboundChannel(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        for (IoReactor ioReactor : ioReactors) {
+            if (ioReactor.owns(channel)) {
+                ioReactor.write(channel, buffer);
+                return;
+            }
+        }
+        throw new ClosedChannelException();
+    }
+
+    private IoReactor chooseReactor() {
+        if (reactorBalancing == ReactorBalancing.LEAST_CONNECTIONS) {
+            IoReactor leastLoaded = ioReactors[0];
+            for (IoReactor ioReactor : ioReactors) {
+                if (ioReactor.getConnections() < leastLoaded.getConnections()) {
+                    leastLoaded = ioReactor;
+                }
+            }
+            return leastLoaded;
+        }
+        IoReactor ioReactor = ioReactors[nextReactor];
+        nextReactor = (nextReactor + 1) % ioReactors.length;
+        return ioReactor;
+    }
+
+    /**
+     * Runs on the selector threads; returns false when the frame goes to a stage that is full,
+     * so the reactor stops reading the connection until there is space.
+     */
+    private boolean processFrame(ByteBuffer buffer, SocketChannel client) throws IOException {
         int requestCode = buffer.getInt();
         switch (requestCode) {
             case CLOSE_CLIENT_REQUEST_CODE:
-                processCloseRequest(buffer);
-                return;
+                return processCloseRequest(buffer, client);
             case CANCELLING_REQUEST_CODE:
                 processCancelRequest(buffer);
-                return;
+                return true;
             case META_DATA_REQUEST_CODE:
-                processMetaData(buffer);
-                return;
+                return processMetaData(buffer, client);
             case CALCULATING_REQUEST_CODE:
-                processCalculateRequest(buffer);
-                return;
+                return processCalculateRequest(buffer);
+            case BATCH_REQUEST_CODE:
+                return processBatchRequest(buffer, client);
         }
         throw new UnsupportedOperationException();
     }
 
-    private void processCalculateRequest(ByteBuffer buffer) throws IOException, ClassNotFoundException {
-        int resultId = buffer.getInt();
-        if (!resultsMap.containsKey(resultId)) {
-            resultsMap.put(resultId, new ServerOperation());
+    private boolean processCalculateRequest(ByteBuffer buffer) {
+        if (decodeStage.isFull()) {
+            return false;
         }
-        ServerOperation currentServerOperation = resultsMap.get(resultId);
+        ByteBuffer chunk = ByteBuffer.allocate(buffer.remaining());
+        chunk.put(buffer);
+        chunk.flip();
+        return decodeStage.trySubmit(chunk);
+    }
+
+    private void decodeChunk(ByteBuffer buffer) {
+        int resultId = buffer.getInt();
+        ServerOperation currentServerOperation = resultsMap.computeIfAbsent(resultId, id -> new ServerOperation());
         ServerState operationServerState = currentServerOperation.getServerState();
         if (operationServerState.equals(ServerState.CANCEL) || operationServerState.equals(ServerState.CLOSE) || operationServerState.equals(ServerState.DONE)) {
             return;
         }
+        if (dropIfExpired(currentServerOperation)) {
+            droppedAtDecode.incrementAndGet();
+            savedOperands.addAndGet(buffer.getInt(buffer.position() + 2 * Integer.BYTES));
+            return;
+        }
         if (operationServerState.equals(ServerState.LOADING)) {
             currentServerOperation.setServerState(ServerState.WAITING_CALCULATE);
         }
         int operationsOrder = buffer.getInt();
         int operationsOrderSubListNumber = buffer.getInt();
         int operandsInBuffer = buffer.getInt();
-        List<Operand> operands = new LinkedList<>();
+        OperandBuffer operands = new OperandBuffer(operandsInBuffer);
         for (int i = 0; i < operandsInBuffer; i++) {
-            byte[] bytes = new byte[buffer.getInt()];
-            buffer.get(bytes);
-            operands.add((Operand) deserialize(bytes));
+            operandCodec.decode(buffer, operands);
         }
-        Runnable runnable = () -> {
-            if (operationServerState.equals(ServerState.WAITING_CALCULATE)) {
-                currentServerOperation.setServerState(ServerState.CALCULATING);
-            }
-            Map<Integer, TreeMap<Integer, List<Operand>>> operationOrderResults = currentServerOperation.getOperationOrderResults();
-            Lock lock;
-            synchronized (currentServerOperation) {
-                Map<Integer, ReentrantLock> receivingCalculationLocks = currentServerOperation.getReceivingCalculationLocks();
-                if (!receivingCalculationLocks.containsKey(operationsOrder)) {
-                    receivingCalculationLocks.put(operationsOrder, new ReentrantLock());
-                }
-                lock = receivingCalculationLocks.get(operationsOrder);
+        if (expressionCostModel != null) {
+            currentServerOperation.addEstimatedCost(expressionCostModel.cost(operands));
+        }
+        ExpressionHash hash = resultCache != null ? ExpressionHash.of(operands) : null;
+        assembleStage.submit(new DecodedChunk(resultId, operationServerState, operationsOrder, operationsOrderSubListNumber, operands, hash));
+    }
+
+    private void assembleChunk(DecodedChunk chunk) {
+        ServerOperation currentServerOperation = resultsMap.get(chunk.resultId);
+        if (chunk.chunksPerOrder != null) {
+            if (currentServerOperation.setChunkLayout(chunk.chunksPerOrder)) {
+                evaluateOrAnswerFromCache(chunk.resultId, currentServerOperation);
             }
-            try {
-                lock.lock();
-                if (!operationOrderResults.containsKey(operationsOrder)) {
-                    TreeMap<Integer, List<Operand>> operationsOrderSubLists = new TreeMap<>();
-                    operationsOrderSubLists.put(operationsOrderSubListNumber, operands);
-                    operationOrderResults.put(operationsOrder, operationsOrderSubLists);
-                } else {
-                    operationOrderResults.get(operationsOrder).put(operationsOrderSubListNumber, operands);
-                }
-                currentServerOperation.addReceivedOperands(operands.size());
-            } finally {
-                lock.unlock();
+            return;
+        }
+        if (dropIfExpired(currentServerOperation)) {
+            droppedAtAssemble.incrementAndGet();
+            savedOperands.addAndGet(chunk.operands.size());
+            return;
+        }
+        if (chunk.operationServerState.equals(ServerState.WAITING_CALCULATE)) {
+            currentServerOperation.setServerState(ServerState.CALCULATING);
+        }
+        if (currentServerOperation.addChunk(chunk.operationsOrder, chunk.operationsOrderSubListNumber, chunk.operands, chunk.hash)) {
+            evaluateOrAnswerFromCache(chunk.resultId, currentServerOperation);
+        }
+    }
+
+    private void evaluateOrAnswerFromCache(int resultId, ServerOperation currentServerOperation) {
+        if (resultCache != null) {
+            ExpressionHash hash = resultCacheKey(currentServerOperation);
+            Double cachedResult = hash != null ? resultCache.get(hash) : null;
+            if (cachedResult != null) {
+                currentServerOperation.setServerState(ServerState.WAITING_TO_SEND);
+                answerBatcher.submit(new ServerAnswer(resultId, cachedResult));
+                return;
             }
-            if (currentServerOperation.getTotalOperands() != 0 && currentServerOperation.getTotalOperands() == currentServerOperation.getReceivedOperands()) {
-                calculateAllPartsAndQueueForSending(resultId);
+        }
+        evaluationLane(currentServerOperation).submit(resultId);
+    }
+
+    /**
+     * One evaluate stage per cost lane; every lane gets its share of the workers, and at least one.
+     */
+    private List<PipelineStage<Integer>> createEvaluateStages(ServerConfig config, int workersCount) {
+        int[] workerShares = config.getEvaluationLaneWorkerShares();
+        if (workerShares.length == 1) {
+            return Collections.singletonList(new PipelineStage<>("evaluate", workersCount,
+                    createEvaluateQueue(config), this::calculateAllPartsAndQueueForSending));
+        }
+        int totalShares = Arrays.stream(workerShares).sum();
+        List<PipelineStage<Integer>> stages = new ArrayList<>(workerShares.length);
+        for (int lane = 0; lane < workerShares.length; lane++) {
+            int laneWorkersCount = Math.max(1, workersCount * workerShares[lane] / totalShares);
+            stages.add(new PipelineStage<>("evaluate-lane-" + lane, laneWorkersCount,
+                    createEvaluateQueue(config), this::calculateAllPartsAndQueueForSending));
+        }
+        return stages;
+    }
+
+    private StageQueue<Integer> createEvaluateQueue(ServerConfig config) {
+        if (fairQueuingQuantum > 0) {
+            DeficitRoundRobinQueue<Integer> queue = new DeficitRoundRobinQueue<>(config.getStageQueueCapacity(), fairQueuingQuantum,
+                    new OperationFlow(), this::clientWeight, config.isEarliestDeadlineFirst() ? new OperationDeadline() : null);
+            fairQueues.add(queue);
+            return queue;
+        }
+        return config.isEarliestDeadlineFirst()
+                ? new EarliestDeadlineQueue<>(config.getStageQueueCapacity(), new OperationDeadline())
+                : new MpmcArrayQueue<>(config.getStageQueueCapacity());
+    }
+
+    private StageQueue<BatchRequest> createBatchQueue(ServerConfig config) {
+        if (fairQueuingQuantum > 0) {
+            DeficitRoundRobinQueue<BatchRequest> queue = new DeficitRoundRobinQueue<>(config.getStageQueueCapacity(), fairQueuingQuantum,
+                    new BatchFlow(), this::clientWeight, null);
+            fairQueues.add(queue);
+            return queue;
+        }
+        return new MpmcArrayQueue<>(config.getStageQueueCapacity());
+    }
+
+    private int clientWeight(int clientId) {
+        return clientWeights.getOrDefault(clientId, 1);
+    }
+
+    private PipelineStage<Integer> evaluationLane(ServerOperation serverOperation) {
+        long cost = serverOperation.getEstimatedCost();
+        for (int lane = 0; lane < evaluationLaneCostThresholds.length; lane++) {
+            if (cost < evaluationLaneCostThresholds[lane]) {
+                return evaluateStages.get(lane);
             }
-        };
-        preparingForCalculatingExecutor.execute(runnable);
-        buffer.flip();
-        buffer.clear();
+        }
+        return evaluateStages.get(evaluateStages.size() - 1);
+    }
+
+    private static ExpressionHash resultCacheKey(ServerOperation serverOperation) {
+        ExpressionHash hash = serverOperation.getExpressionHash();
+        if (hash == null || serverOperation.getPrecisionMode() == PrecisionMode.EXACT) {
+            return hash;
+        }
+        return hash.tagged(serverOperation.getPrecisionMode().ordinal());
     }
 
     private void calculateAllPartsAndQueueForSending(int resultId) {
-        calculatingExecutor.execute(() -> {
-            ServerOperation currentServerOperation = resultsMap.get(resultId);
-            ServerState operationServerState = currentServerOperation.getServerState();
-            if (operationServerState.equals(ServerState.WAITING_CALCULATE)) {
-                currentServerOperation.setServerState(ServerState.CALCULATING);
-            }
-            List<Operand> totalCalculation = new LinkedList<>();
-            Map<Integer, TreeMap<Integer, List<Operand>>> operationOrderResults = currentServerOperation.getOperationOrderResults();
-            for (Integer operationOrder : operationOrderResults.keySet()) {
-                TreeMap<Integer, List<Operand>> operationsOrderSubLists = operationOrderResults.get(operationOrder);
-                for (Integer operationsOrderSubListNumber : operationsOrderSubLists.keySet()) {
-                    totalCalculation.addAll(operationsOrderSubLists.get(operationsOrderSubListNumber));
-                }
+        ServerOperation currentServerOperation = resultsMap.get(resultId);
+        if (dropIfExpired(currentServerOperation)) {
+            droppedAtEvaluate.incrementAndGet();
+            savedOperands.addAndGet(currentServerOperation.getReceivedOperands());
+            return;
+        }
+        ServerState operationServerState = currentServerOperation.getServerState();
+        if (operationServerState.equals(ServerState.WAITING_CALCULATE)) {
+            currentServerOperation.setServerState(ServerState.CALCULATING);
+        }
+        OperandBuffer totalCalculation = new OperandBuffer(currentServerOperation.getReceivedOperands());
+        for (OperandBuffer chunk : currentServerOperation.getChunks()) {
+            totalCalculation.addAll(chunk);
+        }
+        double totalResult = expressionEvaluator.evaluate(totalCalculation, currentServerOperation.getPrecisionMode());
+        if (resultCache != null) {
+            ExpressionHash hash = resultCacheKey(currentServerOperation);
+            if (hash != null) {
+                resultCache.put(hash, totalResult);
             }
-            double totalResult = OperandsParser.parseAndCalculate(totalCalculation);
-            readyForSendingResultsQueue.add(new ServerAnswer(resultId, totalResult));
-            currentServerOperation.setServerState(ServerState.WAITING_TO_SEND);
-        });
+        }
+        currentServerOperation.setServerState(ServerState.WAITING_TO_SEND);
+        answerBatcher.submit(new ServerAnswer(resultId, totalResult));
     }
 
-    private void processMetaData(ByteBuffer buffer) {
+    /**
+     * Registering the operation is idempotent, so a frame turned down by a full assemble stage can be parsed again;
+     * the chunk layout goes to the assemble stage, whose worker submits the evaluation when every chunk is there.
+     */
+    private boolean processMetaData(ByteBuffer buffer, SocketChannel client) {
         int resultId = buffer.getInt();
-        if (!resultsMap.containsKey(resultId)) {
-            resultsMap.put(resultId, new ServerOperation());
-        }
-        ServerOperation currentServerOperation = resultsMap.get(resultId);
+        ServerOperation currentServerOperation = resultsMap.computeIfAbsent(resultId, id -> new ServerOperation());
         if (currentServerOperation.getServerState().equals(ServerState.LOADING)) {
             currentServerOperation.setServerState(ServerState.WAITING_CALCULATE);
         }
         int clientId = buffer.getInt();
-        currentServerOperation.setAnswerPort(buffer.getInt());
+        currentServerOperation.setClientId(clientId);
+        int answerPort = buffer.getInt();
+        currentServerOperation.setAnswerPort(answerPort);
+        if (answerPort == INBOUND_CHANNEL_ANSWER_PORT) {
+            currentServerOperation.setAnswerChannel(client);
+        }
         currentServerOperation.setTotalOperands(buffer.getInt());
+        currentServerOperation.setPrecisionMode(PRECISION_MODES[buffer.getInt()]);
+        long deadlineMillis = buffer.getLong();
+        if (deadlineMillis != NO_DEADLINE && !currentServerOperation.hasDeadline()) {
+            currentServerOperation.setDeadlineNanos(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis));
+        }
+        int[] chunksPerOrder = new int[buffer.getInt()];
+        for (int i = 0; i < chunksPerOrder.length; i++) {
+            chunksPerOrder[i] = buffer.getInt();
+        }
         synchronized (clientsResultsMap) {
             if (!clientsResultsMap.containsKey(clientId)) {
                 clientsResultsMap.put(clientId, new ClientInfo());
@@ -255,42 +577,117 @@ public class Server {
                 clientInfo.addResultId(resultId);
             }
         }
-        buffer.flip();
-        buffer.clear();
-        if (currentServerOperation.getTotalOperands() == currentServerOperation.getReceivedOperands()) {
-            calculateAllPartsAndQueueForSending(resultId);
-        }
+        return assembleStage.trySubmit(new DecodedChunk(resultId, chunksPerOrder));
     }
 
-    private void processCloseRequest(ByteBuffer buffer) throws IOException {
+    /**
+     * Registering the operations is idempotent, so a frame turned down by a full batch stage can be parsed again.
+     */
+    private boolean processBatchRequest(ByteBuffer buffer, SocketChannel client) {
         int clientId = buffer.getInt();
-        if (!clientsResultsMap.containsKey(clientId)) {
-            clientsResultsMap.put(clientId, new ClientInfo());
+        int answerPort = buffer.getInt();
+        PrecisionMode precisionMode = PRECISION_MODES[buffer.getInt()];
+        int[] resultIds = new int[buffer.getInt()];
+        for (int i = 0; i < resultIds.length; i++) {
+            resultIds[i] = buffer.getInt();
+            ServerOperation currentServerOperation = resultsMap.computeIfAbsent(resultIds[i], id -> new ServerOperation());
+            if (currentServerOperation.getServerState().equals(ServerState.LOADING)) {
+                currentServerOperation.setServerState(ServerState.WAITING_CALCULATE);
+            }
+            currentServerOperation.setClientId(clientId);
+            currentServerOperation.setAnswerPort(answerPort);
+            if (answerPort == INBOUND_CHANNEL_ANSWER_PORT) {
+                currentServerOperation.setAnswerChannel(client);
+            }
+            currentServerOperation.setPrecisionMode(precisionMode);
         }
-        clientsResultsMap.get(clientId).setClosed();
-        for (Integer resultId : clientsResultsMap.get(clientId).resultIds) {
-            resultsMap.get(resultId).setServerState(ServerState.CLOSE);
+        synchronized (clientsResultsMap) {
+            ClientInfo clientInfo = clientsResultsMap.computeIfAbsent(clientId, id -> new ClientInfo());
+            if (!clientInfo.isClosed()) {
+                for (int resultId : resultIds) {
+                    clientInfo.addResultId(resultId);
+                }
+            }
+        }
+        ByteBuffer expressions = ByteBuffer.allocate(buffer.remaining());
+        expressions.put(buffer);
+        expressions.flip();
+        return batchStage.trySubmit(new BatchRequest(clientId, resultIds, precisionMode, expressions));
+    }
+
+    /**
+     * Batched expressions are small, so they are decoded and evaluated by one worker in a single pass
+     * instead of going through the per-chunk decode, assemble and evaluate stages.
+     */
+    private void calculateBatchAndQueueForSending(BatchRequest batch) {
+        int[] answeredIds = new int[batch.resultIds.length];
+        double[] answers = new double[batch.resultIds.length];
+        int answered = 0;
+        for (int resultId : batch.resultIds) {
+            int operandsCount = batch.expressions.getInt();
+            OperandBuffer operands = new OperandBuffer(operandsCount);
+            for (int i = 0; i < operandsCount; i++) {
+                operandCodec.decode(batch.expressions, operands);
+            }
+            ServerOperation currentServerOperation = resultsMap.get(resultId);
+            ServerState operationServerState = currentServerOperation.getServerState();
+            if (operationServerState.equals(ServerState.CANCEL) || operationServerState.equals(ServerState.CLOSE)) {
+                continue;
+            }
+            currentServerOperation.setTotalOperands(operandsCount);
+            currentServerOperation.addReceivedOperands(operandsCount);
+            currentServerOperation.setServerState(ServerState.CALCULATING);
+            ExpressionHash hash = null;
+            Double cachedResult = null;
+            if (resultCache != null) {
+                hash = ExpressionHash.of(operands);
+                if (batch.precisionMode != PrecisionMode.EXACT) {
+                    hash = hash.tagged(batch.precisionMode.ordinal());
+                }
+                cachedResult = resultCache.get(hash);
+            }
+            double result;
+            if (cachedResult != null) {
+                result = cachedResult;
+            } else {
+                result = expressionEvaluator.evaluate(operands, batch.precisionMode);
+                if (resultCache != null) {
+                    resultCache.put(hash, result);
+                }
+            }
+            currentServerOperation.setServerState(ServerState.WAITING_TO_SEND);
+            answeredIds[answered] = resultId;
+            answers[answered++] = result;
+        }
+        if (answered > 0) {
+            answerBatcher.submit(new ServerAnswer(Arrays.copyOf(answeredIds, answered), Arrays.copyOf(answers, answered)));
         }
-        SocketChannel closingClientAnswerChannel = SocketChannel.open(new InetSocketAddress("localhost", buffer.getInt()));
-        buffer.flip();
-        buffer.clear();
-        buffer.putInt(CLOSE_CLIENT_REQUEST_CODE);
-        buffer.flip();
-        closingClientAnswerChannel.write(buffer);
-        buffer.clear();
+    }
+
+    /**
+     * Closing is idempotent, so a stalled close frame can be processed again. The ack is queued behind the
+     * answers already on the answer stage, so the answer thread sends it after them.
+     */
+    private boolean processCloseRequest(ByteBuffer buffer, SocketChannel client) {
+        int clientId = buffer.getInt();
+        synchronized (clientsResultsMap) {
+            ClientInfo clientInfo = clientsResultsMap.computeIfAbsent(clientId, id -> new ClientInfo());
+            clientInfo.setClosed();
+            for (Integer resultId : clientInfo.resultIds) {
+                resultsMap.get(resultId).setServerState(ServerState.CLOSE);
+            }
+        }
+        int answerPort = buffer.getInt();
+        return answerBatcher.trySubmit(answerPort == INBOUND_CHANNEL_ANSWER_PORT
+                ? ServerAnswer.close(0, client) : ServerAnswer.close(answerPort, null));
     }
 
     private void processCancelRequest(ByteBuffer buffer) {
         int resultId = buffer.getInt();
-        if (!resultsMap.containsKey(resultId)) {
-            resultsMap.put(resultId, new ServerOperation());
-        }
-        ServerOperation currentServerOperation = resultsMap.get(resultId);
+        ServerOperation currentServerOperation = resultsMap.computeIfAbsent(resultId, id -> new ServerOperation());
         if (!currentServerOperation.getServerState().equals(ServerState.DONE) && !currentServerOperation.getServerState().equals(ServerState.CLOSE)) {
             resultsMap.get(resultId).setServerState(ServerState.CANCEL);
         }
-        buffer.flip();
-        buffer.clear();
     }
 
     public Set<Integer> getClients() {
@@ -322,13 +719,253 @@ public class Server {
         return clientsResultsMap.get(clientId);
     }
 
+    public AnswerConnectionPool.Metrics getAnswerConnectionPoolMetrics() {
+        return answerConnectionPool.getMetrics();
+    }
+
+    public AnswerBatcher<?> getAnswerBatcher() {
+        return answerBatcher;
+    }
+
+    /**
+     * Returns null if the result cache is disabled.
+     */
+    public ResultCache.Metrics getResultCacheMetrics() {
+        return resultCache != null ? resultCache.getMetrics() : null;
+    }
+
+    /**
+     * Returns null if unary memoization is disabled.
+     */
+    public UnaryMemoTable.Metrics getUnaryMemoMetrics() {
+        return unaryMemoTable != null ? unaryMemoTable.getMetrics() : null;
+    }
+
+    public List<PipelineStage.Metrics> getPipelineMetrics() {
+        List<PipelineStage.Metrics> metrics = new ArrayList<>();
+        metrics.add(decodeStage.getMetrics());
+        metrics.add(assembleStage.getMetrics());
+        evaluateStages.forEach(stage -> metrics.add(stage.getMetrics()));
+        metrics.add(batchStage.getMetrics());
+        metrics.add(answerBatcher.getMetrics());
+        return metrics;
+    }
+
+    public int getAnswerQueueDepth() {
+        return answerBatcher.getMetrics().getQueueDepth();
+    }
+
+    public DeadlineMetrics getDeadlineMetrics() {
+        return new DeadlineMetrics(expiredOperations.get(), droppedAtDecode.get(), droppedAtAssemble.get(),
+                droppedAtEvaluate.get(), droppedAtAnswer.get(), savedOperands.get());
+    }
+
+    /**
+     * Returns the queueing delay of every client in the evaluate and batch stages, or null if fair queuing is disabled.
+     */
+    public Map<Integer, DeficitRoundRobinQueue.FlowMetrics> getClientQueueingMetrics() {
+        if (fairQueues.isEmpty()) {
+            return null;
+        }
+        Map<Integer, DeficitRoundRobinQueue.FlowMetrics> metrics = new HashMap<>();
+        for (DeficitRoundRobinQueue<?> queue : fairQueues) {
+            queue.getFlowMetrics().forEach((clientId, flowMetrics) -> metrics.merge(clientId, flowMetrics, DeficitRoundRobinQueue.FlowMetrics::merge));
+        }
+        return metrics;
+    }
+
+    /**
+     * Queues evaluations per client; the cost is the estimated one when evaluation lanes are on, else the operand count.
+     */
+    private class OperationFlow implements DeficitRoundRobinQueue.FlowFunction<Integer> {
+        @Override
+        public int flowOf(Integer resultId) {
+            return resultsMap.get(resultId).getClientId();
+        }
+
+        @Override
+        public long costOf(Integer resultId) {
+            ServerOperation serverOperation = resultsMap.get(resultId);
+            return expressionCostModel != null ? serverOperation.getEstimatedCost() : serverOperation.getReceivedOperands();
+        }
+    }
+
+    private static class BatchFlow implements DeficitRoundRobinQueue.FlowFunction<BatchRequest> {
+        @Override
+        public int flowOf(BatchRequest batch) {
+            return batch.clientId;
+        }
+
+        @Override
+        public long costOf(BatchRequest batch) {
+            return batch.expressions.remaining();
+        }
+    }
+
+    /**
+     * Orders the evaluation queue by the deadlines of the queued operations.
+     */
+    private class OperationDeadline implements EarliestDeadlineQueue.DeadlineFunction<Integer> {
+        @Override
+        public boolean hasDeadline(Integer resultId) {
+            return resultsMap.get(resultId).hasDeadline();
+        }
+
+        @Override
+        public long deadlineNanos(Integer resultId) {
+            return resultsMap.get(resultId).getDeadlineNanos();
+        }
+    }
+
+    private static class DecodedChunk {
+        private final int resultId;
+        private final ServerState operationServerState;
+        private final int operationsOrder;
+        private final int operationsOrderSubListNumber;
+        private final OperandBuffer operands;
+        private final ExpressionHash hash;
+        private final int[] chunksPerOrder;
+
+        public DecodedChunk(int resultId, ServerState operationServerState, int operationsOrder, int operationsOrderSubListNumber, OperandBuffer operands, ExpressionHash hash) {
+            this.resultId = resultId;
+            this.operationServerState = operationServerState;
+            this.operationsOrder = operationsOrder;
+            this.operationsOrderSubListNumber = operationsOrderSubListNumber;
+            this.operands = operands;
+            this.hash = hash;
+            this.chunksPerOrder = null;
+        }
+
+        /**
+         * The chunk layout of an operation, sent by its metadata frame.
+         */
+        public DecodedChunk(int resultId, int[] chunksPerOrder) {
+            this.resultId = resultId;
+            this.operationServerState = null;
+            this.operationsOrder = 0;
+            this.operationsOrderSubListNumber = 0;
+            this.operands = null;
+            this.hash = null;
+            this.chunksPerOrder = chunksPerOrder;
+        }
+    }
+
+    private static class BatchRequest {
+        private final int clientId;
+        private final int[] resultIds;
+        private final PrecisionMode precisionMode;
+        private final ByteBuffer expressions;
+
+        public BatchRequest(int clientId, int[] resultIds, PrecisionMode precisionMode, ByteBuffer expressions) {
+            this.clientId = clientId;
+            this.resultIds = resultIds;
+            this.precisionMode = precisionMode;
+            this.expressions = expressions;
+        }
+    }
+
+    private interface AnswerWriter {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Either a single answer or the answers of one batch frame, which go back together in one batched frame.
+     * A batched answer is routed by its first result id: the whole batch came from one connection.
+     */
     private static class ServerAnswer {
         private final int id;
         private final double result;
+        private final int[] batchIds;
+        private final double[] batchResults;
+        private final boolean close;
+        private final int answerPort;
+        private final SocketChannel answerChannel;
 
         public ServerAnswer(int id, double result) {
+            this(id, result, null, null, false, 0, null);
+        }
+
+        public ServerAnswer(int[] batchIds, double[] batchResults) {
+            this(batchIds[0], Double.NaN, batchIds, batchResults, false, 0, null);
+        }
+
+        private ServerAnswer(int id, double result, int[] batchIds, double[] batchResults,
+                             boolean close, int answerPort, SocketChannel answerChannel) {
             this.id = id;
             this.result = result;
+            this.batchIds = batchIds;
+            this.batchResults = batchResults;
+            this.close = close;
+            this.answerPort = answerPort;
+            this.answerChannel = answerChannel;
+        }
+
+        /**
+         * The ack of a close request, routed by the client's answer port or, for bidirectional clients, its channel.
+         */
+        static ServerAnswer close(int answerPort, SocketChannel answerChannel) {
+            return new ServerAnswer(0, Double.NaN, null, null, true, answerPort, answerChannel);
+        }
+
+        int encodedSize() {
+            if (close) {
+                return CLOSE_ANSWER_FRAME_BYTES;
+            }
+            return batchIds == null ? ANSWER_FRAME_BYTES : Frames.HEADER_BYTES + 2 * Integer.BYTES + batchIds.length * BATCH_ANSWER_ENTRY_BYTES;
+        }
+    }
+
+    /**
+     * Work skipped because the deadline of its operation had passed: how many operations expired,
+     * how many items each stage dropped, and how many operands were never decoded, assembled or evaluated.
+     */
+    public static class DeadlineMetrics {
+        private final long expiredOperations;
+        private final long droppedAtDecode;
+        private final long droppedAtAssemble;
+        private final long droppedAtEvaluate;
+        private final long droppedAtAnswer;
+        private final long savedOperands;
+
+        public DeadlineMetrics(long expiredOperations, long droppedAtDecode, long droppedAtAssemble,
+                               long droppedAtEvaluate, long droppedAtAnswer, long savedOperands) {
+            this.expiredOperations = expiredOperations;
+            this.droppedAtDecode = droppedAtDecode;
+            this.droppedAtAssemble = droppedAtAssemble;
+            this.droppedAtEvaluate = droppedAtEvaluate;
+            this.droppedAtAnswer = droppedAtAnswer;
+            this.savedOperands = savedOperands;
+        }
+
+        public long getExpiredOperations() {
+            return expiredOperations;
+        }
+
+        public long getDroppedAtDecode() {
+            return droppedAtDecode;
+        }
+
+        public long getDroppedAtAssemble() {
+            return droppedAtAssemble;
+        }
+
+        public long getDroppedAtEvaluate() {
+            return droppedAtEvaluate;
+        }
+
+        public long getDroppedAtAnswer() {
+            return droppedAtAnswer;
+        }
+
+        public long getSavedOperands() {
+            return savedOperands;
+        }
+
+        @Override
+        public String toString() {
+            return "expiredOperations=" + expiredOperations + " droppedAtDecode=" + droppedAtDecode
+                    + " droppedAtAssemble=" + droppedAtAssemble + " droppedAtEvaluate=" + droppedAtEvaluate
+                    + " droppedAtAnswer=" + droppedAtAnswer + " savedOperands=" + savedOperands;
         }
     }
 
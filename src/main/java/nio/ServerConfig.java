@@ -0,0 +1,372 @@
+package nio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ServerConfig {
+
+    private OperandCodec operandCodec = new BinaryOperandCodec();
+    private long answerConnectionIdleTimeoutMillis = 30_000;
+    private int answerBatchSize = 256;
+    private long answerLingerMicros = 0;
+    private int ioReactorsCount = 1;
+    private ReactorBalancing reactorBalancing = ReactorBalancing.LEAST_CONNECTIONS;
+    private int decodeWorkersCount = 1;
+    private int assembleWorkersCount = 1;
+    private int stageQueueCapacity = 1 << 16;
+    private boolean earliestDeadlineFirst = false;
+    private long[] evaluationLaneCostThresholds = new long[0];
+    private int[] evaluationLaneWorkerShares = new int[]{1};
+    private ExpressionCostModel expressionCostModel = new ExpressionCostModel();
+    private long fairQueuingQuantum = 0;
+    private final Map<Integer, Integer> clientWeights = new HashMap<>();
+    private ExpressionEvaluator expressionEvaluator;
+    private int unaryMemoTableSize = 0;
+    private int compiledPlanCacheSize = 0;
+    private int compiledPlanMaxOperands = 256;
+    private int parallelEvaluationThreshold = 0;
+    private int columnarEvaluationThreshold = 0;
+    private int resultCacheSize = 0;
+    private long resultCacheTtlMillis = 60_000;
+    private int parallelEvaluationChunkSize = 8192;
+
+    public OperandCodec getOperandCodec() {
+        return operandCodec;
+    }
+
+    public ServerConfig setOperandCodec(OperandCodec operandCodec) {
+        if (operandCodec == null) {
+            throw new NullPointerException();
+        }
+        this.operandCodec = operandCodec;
+        return this;
+    }
+
+    public long getAnswerConnectionIdleTimeoutMillis() {
+        return answerConnectionIdleTimeoutMillis;
+    }
+
+    public ServerConfig setAnswerConnectionIdleTimeoutMillis(long answerConnectionIdleTimeoutMillis) {
+        if (answerConnectionIdleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.answerConnectionIdleTimeoutMillis = answerConnectionIdleTimeoutMillis;
+        return this;
+    }
+
+    public int getAnswerBatchSize() {
+        return answerBatchSize;
+    }
+
+    public ServerConfig setAnswerBatchSize(int answerBatchSize) {
+        if (answerBatchSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.answerBatchSize = answerBatchSize;
+        return this;
+    }
+
+    public long getAnswerLingerMicros() {
+        return answerLingerMicros;
+    }
+
+    public ServerConfig setAnswerLingerMicros(long answerLingerMicros) {
+        if (answerLingerMicros < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.answerLingerMicros = answerLingerMicros;
+        return this;
+    }
+
+    public int getIoReactorsCount() {
+        return ioReactorsCount;
+    }
+
+    public ServerConfig setIoReactorsCount(int ioReactorsCount) {
+        if (ioReactorsCount <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.ioReactorsCount = ioReactorsCount;
+        return this;
+    }
+
+    public ReactorBalancing getReactorBalancing() {
+        return reactorBalancing;
+    }
+
+    public ServerConfig setReactorBalancing(ReactorBalancing reactorBalancing) {
+        if (reactorBalancing == null) {
+            throw new NullPointerException();
+        }
+        this.reactorBalancing = reactorBalancing;
+        return this;
+    }
+
+    public int getDecodeWorkersCount() {
+        return decodeWorkersCount;
+    }
+
+    public ServerConfig setDecodeWorkersCount(int decodeWorkersCount) {
+        if (decodeWorkersCount <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.decodeWorkersCount = decodeWorkersCount;
+        return this;
+    }
+
+    public int getAssembleWorkersCount() {
+        return assembleWorkersCount;
+    }
+
+    public ServerConfig setAssembleWorkersCount(int assembleWorkersCount) {
+        if (assembleWorkersCount <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.assembleWorkersCount = assembleWorkersCount;
+        return this;
+    }
+
+    public int getStageQueueCapacity() {
+        return stageQueueCapacity;
+    }
+
+    public ServerConfig setStageQueueCapacity(int stageQueueCapacity) {
+        if (stageQueueCapacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.stageQueueCapacity = stageQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Null means the built-in {@link PrimitiveExpressionEvaluator}, which uses the unary memo table when it is enabled.
+     */
+    public ExpressionEvaluator getExpressionEvaluator() {
+        return expressionEvaluator;
+    }
+
+    /**
+     * Sequential evaluator of assembled expressions, e.g. a {@link SyntheticCostEvaluator} for load tests.
+     */
+    public ServerConfig setExpressionEvaluator(ExpressionEvaluator expressionEvaluator) {
+        if (expressionEvaluator == null) {
+            throw new NullPointerException();
+        }
+        this.expressionEvaluator = expressionEvaluator;
+        return this;
+    }
+
+    public int getUnaryMemoTableSize() {
+        return unaryMemoTableSize;
+    }
+
+    /**
+     * Number of slots of the {@link UnaryMemoTable} in front of the transcendental kernels. 0 disables memoization.
+     */
+    public ServerConfig setUnaryMemoTableSize(int unaryMemoTableSize) {
+        if (unaryMemoTableSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.unaryMemoTableSize = unaryMemoTableSize;
+        return this;
+    }
+
+    public int getCompiledPlanCacheSize() {
+        return compiledPlanCacheSize;
+    }
+
+    /**
+     * Number of expression shapes kept as compiled plans, see {@link CompiledExpressionEvaluator}.
+     * 0 disables compilation. Plans compile the built-in kernels, so they are not used with a custom
+     * {@link #setExpressionEvaluator(ExpressionEvaluator) expression evaluator}.
+     */
+    public ServerConfig setCompiledPlanCacheSize(int compiledPlanCacheSize) {
+        if (compiledPlanCacheSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.compiledPlanCacheSize = compiledPlanCacheSize;
+        return this;
+    }
+
+    public int getCompiledPlanMaxOperands() {
+        return compiledPlanMaxOperands;
+    }
+
+    public ServerConfig setCompiledPlanMaxOperands(int compiledPlanMaxOperands) {
+        if (compiledPlanMaxOperands <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.compiledPlanMaxOperands = compiledPlanMaxOperands;
+        return this;
+    }
+
+    public int getParallelEvaluationThreshold() {
+        return parallelEvaluationThreshold;
+    }
+
+    /**
+     * Expressions with at least this many operands are evaluated in parallel as affine maps,
+     * see {@link AffineReduction} for the tolerance. 0 disables parallel evaluation.
+     */
+    public ServerConfig setParallelEvaluationThreshold(int parallelEvaluationThreshold) {
+        if (parallelEvaluationThreshold < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.parallelEvaluationThreshold = parallelEvaluationThreshold;
+        return this;
+    }
+
+    public boolean isEarliestDeadlineFirst() {
+        return earliestDeadlineFirst;
+    }
+
+    /**
+     * Orders the evaluation queue by the deadlines sent with {@link Client#calculateWithDeadline(java.util.List, long)},
+     * see {@link EarliestDeadlineQueue}; when off, the default, expressions are evaluated in arrival order.
+     */
+    public ServerConfig setEarliestDeadlineFirst(boolean earliestDeadlineFirst) {
+        this.earliestDeadlineFirst = earliestDeadlineFirst;
+        return this;
+    }
+
+    public long[] getEvaluationLaneCostThresholds() {
+        return evaluationLaneCostThresholds.clone();
+    }
+
+    public int[] getEvaluationLaneWorkerShares() {
+        return evaluationLaneWorkerShares.clone();
+    }
+
+    /**
+     * Splits evaluation into lanes by the cost estimated with {@link #getExpressionCostModel()}: lane {@code i}
+     * takes expressions cheaper than {@code costThresholds[i]}, the last lane takes the rest. Each lane has its own
+     * queue and at least one worker; the evaluation workers are shared out in proportion to {@code workerShares},
+     * so cheap expressions never wait behind expensive ones. No thresholds means a single lane.
+     */
+    public ServerConfig setEvaluationLanes(long[] costThresholds, int[] workerShares) {
+        if (costThresholds == null || workerShares == null) {
+            throw new NullPointerException();
+        }
+        if (workerShares.length != costThresholds.length + 1) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < costThresholds.length; i++) {
+            if (costThresholds[i] <= 0 || (i > 0 && costThresholds[i] <= costThresholds[i - 1])) {
+                throw new IllegalArgumentException();
+            }
+        }
+        for (int workerShare : workerShares) {
+            if (workerShare <= 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+        this.evaluationLaneCostThresholds = costThresholds.clone();
+        this.evaluationLaneWorkerShares = workerShares.clone();
+        return this;
+    }
+
+    public ExpressionCostModel getExpressionCostModel() {
+        return expressionCostModel;
+    }
+
+    public ServerConfig setExpressionCostModel(ExpressionCostModel expressionCostModel) {
+        if (expressionCostModel == null) {
+            throw new NullPointerException();
+        }
+        this.expressionCostModel = expressionCostModel;
+        return this;
+    }
+
+    public long getFairQueuingQuantum() {
+        return fairQueuingQuantum;
+    }
+
+    /**
+     * Shares the evaluate and batch stages between clients with deficit round robin, see {@link DeficitRoundRobinQueue}:
+     * each round a client may take work costing up to {@code quantum} times its weight. Costs are estimated
+     * with {@link #getExpressionCostModel()} when evaluation lanes are on, otherwise they are operand counts,
+     * and the cost of a batch is its size in bytes. 0 disables fair queuing.
+     */
+    public ServerConfig setFairQueuingQuantum(long fairQueuingQuantum) {
+        if (fairQueuingQuantum < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.fairQueuingQuantum = fairQueuingQuantum;
+        return this;
+    }
+
+    public int getClientWeight(int clientId) {
+        return clientWeights.getOrDefault(clientId, 1);
+    }
+
+    public Map<Integer, Integer> getClientWeights() {
+        return new HashMap<>(clientWeights);
+    }
+
+    /**
+     * Weight of a client under fair queuing; clients without one weigh 1.
+     */
+    public ServerConfig setClientWeight(int clientId, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException();
+        }
+        clientWeights.put(clientId, weight);
+        return this;
+    }
+
+    public int getColumnarEvaluationThreshold() {
+        return columnarEvaluationThreshold;
+    }
+
+    /**
+     * Expressions with at least this many operands have their unary parts applied in bulk,
+     * see {@link ColumnarExpressionEvaluator}. 0 disables columnar evaluation. The bulk kernels replace the
+     * built-in ones, so columnar evaluation is not used with a custom evaluator or a unary memo table.
+     */
+    public ServerConfig setColumnarEvaluationThreshold(int columnarEvaluationThreshold) {
+        if (columnarEvaluationThreshold < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.columnarEvaluationThreshold = columnarEvaluationThreshold;
+        return this;
+    }
+
+    public int getParallelEvaluationChunkSize() {
+        return parallelEvaluationChunkSize;
+    }
+
+    public ServerConfig setParallelEvaluationChunkSize(int parallelEvaluationChunkSize) {
+        if (parallelEvaluationChunkSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.parallelEvaluationChunkSize = parallelEvaluationChunkSize;
+        return this;
+    }
+
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    /**
+     * Maximum number of cached results of repeated expressions, see {@link ResultCache}. 0 disables the cache.
+     */
+    public ServerConfig setResultCacheSize(int resultCacheSize) {
+        if (resultCacheSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.resultCacheSize = resultCacheSize;
+        return this;
+    }
+
+    public long getResultCacheTtlMillis() {
+        return resultCacheTtlMillis;
+    }
+
+    public ServerConfig setResultCacheTtlMillis(long resultCacheTtlMillis) {
+        if (resultCacheTtlMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.resultCacheTtlMillis = resultCacheTtlMillis;
+        return this;
+    }
+}
@@ -1,20 +1,35 @@
 package nio;
 
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 public class ServerOperation {
-    private final Map<Integer, TreeMap<Integer, List<Operand>>> operationOrderResults = new TreeMap<>();
-    private final Map<Integer, ReentrantLock> receivingCalculationLocks = new ConcurrentHashMap<>();
+    private final AtomicReference<ChunkSlots> chunkSlots = new AtomicReference<>();
+    private final Queue<PendingChunk> pendingChunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger receivedChunks = new AtomicInteger(0);
+    private final AtomicBoolean assembled = new AtomicBoolean(false);
     private final AtomicInteger receivedOperands = new AtomicInteger(0);
+    private final AtomicLong estimatedCost = new AtomicLong(0);
     private volatile ServerState serverState = ServerState.LOADING;
+    private volatile PrecisionMode precisionMode = PrecisionMode.EXACT;
     private volatile int totalOperands;
     private volatile int answerPort;
+    private volatile int clientId;
+    private volatile SocketChannel answerChannel;
+    private volatile boolean hasDeadline;
+    private volatile long deadlineNanos;
 
     public int getTotalOperands() {
         return totalOperands;
@@ -32,20 +47,155 @@ public class ServerOperation {
         this.answerPort = answerPort;
     }
 
+    public int getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(int clientId) {
+        this.clientId = clientId;
+    }
+
+    public SocketChannel getAnswerChannel() {
+        return answerChannel;
+    }
+
+    public void setAnswerChannel(SocketChannel answerChannel) {
+        this.answerChannel = answerChannel;
+    }
+
     public void addReceivedOperands(int operandsNumber) {
-        receivedOperands.updateAndGet(operand -> operand + operandsNumber);
+        receivedOperands.addAndGet(operandsNumber);
     }
 
     public int getReceivedOperands() {
         return receivedOperands.get();
     }
 
-    public Map<Integer, TreeMap<Integer, List<Operand>>> getOperationOrderResults() {
+    /**
+     * Adds the cost of a decoded chunk, see {@link ExpressionCostModel}.
+     */
+    public void addEstimatedCost(long cost) {
+        estimatedCost.addAndGet(cost);
+    }
+
+    public long getEstimatedCost() {
+        return estimatedCost.get();
+    }
+
+    /**
+     * Preallocates one slot per chunk of the layout sent in the metadata frame.
+     * Returns true if this call completed the assembly, which happens when every chunk arrived first.
+     */
+    public boolean setChunkLayout(int[] chunksPerOrder) {
+        if (!chunkSlots.compareAndSet(null, new ChunkSlots(chunksPerOrder))) {
+            return false;
+        }
+        return placePendingChunks();
+    }
+
+    /**
+     * Publishes a chunk into its slot. Chunks that arrive before the layout are parked until it is known.
+     * Returns true for exactly one call per operation: the one that filled the last slot.
+     */
+    public boolean addChunk(int operationsOrder, int operationsOrderSubListNumber, OperandBuffer operands) {
+        return addChunk(operationsOrder, operationsOrderSubListNumber, operands, null);
+    }
+
+    /**
+     * Same as {@link #addChunk(int, int, OperandBuffer)}, also keeping the content hash computed while the chunk was decoded.
+     */
+    public boolean addChunk(int operationsOrder, int operationsOrderSubListNumber, OperandBuffer operands, ExpressionHash hash) {
+        ChunkSlots slots = chunkSlots.get();
+        if (slots == null) {
+            pendingChunks.add(new PendingChunk(operationsOrder, operationsOrderSubListNumber, operands, hash));
+            return chunkSlots.get() != null && placePendingChunks();
+        }
+        return place(slots, operationsOrder, operationsOrderSubListNumber, operands, hash);
+    }
+
+    public boolean isAssembled() {
+        return assembled.get();
+    }
+
+    public int getOrdersCount() {
+        ChunkSlots slots = chunkSlots.get();
+        return slots == null ? 0 : slots.orderOffsets.length - 1;
+    }
+
+    public List<OperandBuffer> getChunks() {
+        ChunkSlots slots = chunkSlots.get();
+        if (slots == null) {
+            return Collections.emptyList();
+        }
+        List<OperandBuffer> chunks = new ArrayList<>(slots.chunks.length());
+        for (int i = 0; i < slots.chunks.length(); i++) {
+            chunks.add(slots.chunks.get(i));
+        }
+        return chunks;
+    }
+
+    /**
+     * Hash of the whole expression composed from the chunk hashes, or null if it is not assembled
+     * or some chunk was added without a hash.
+     */
+    public ExpressionHash getExpressionHash() {
+        ChunkSlots slots = chunkSlots.get();
+        if (slots == null || !isAssembled()) {
+            return null;
+        }
+        ExpressionHash expressionHash = null;
+        for (int i = 0; i < slots.hashes.length(); i++) {
+            ExpressionHash hash = slots.hashes.get(i);
+            if (hash == null) {
+                return null;
+            }
+            expressionHash = expressionHash == null ? hash : expressionHash.then(hash);
+        }
+        return expressionHash;
+    }
+
+    public Map<Integer, List<OperandBuffer>> getOperationOrderResults() {
+        Map<Integer, List<OperandBuffer>> operationOrderResults = new LinkedHashMap<>();
+        ChunkSlots slots = chunkSlots.get();
+        if (slots == null) {
+            return operationOrderResults;
+        }
+        for (int order = 1; order < slots.orderOffsets.length; order++) {
+            List<OperandBuffer> orderChunks = new ArrayList<>();
+            for (int i = slots.orderOffsets[order - 1]; i < slots.orderOffsets[order]; i++) {
+                orderChunks.add(slots.chunks.get(i));
+            }
+            operationOrderResults.put(order, orderChunks);
+        }
         return operationOrderResults;
     }
 
-    public Map<Integer, ReentrantLock> getReceivingCalculationLocks() {
-        return receivingCalculationLocks;
+    public PrecisionMode getPrecisionMode() {
+        return precisionMode;
+    }
+
+    public void setPrecisionMode(PrecisionMode precisionMode) {
+        this.precisionMode = precisionMode;
+    }
+
+    /**
+     * Sets the {@link System#nanoTime()} after which nobody waits for the answer any more.
+     */
+    public void setDeadlineNanos(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+        hasDeadline = true;
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public boolean isExpired(long nowNanos) {
+        return hasDeadline && nowNanos - deadlineNanos >= 0;
     }
 
     public ServerState getServerState() {
@@ -55,4 +205,70 @@ public class ServerOperation {
     public void setServerState(ServerState serverState) {
         this.serverState = serverState;
     }
+
+    private boolean placePendingChunks() {
+        ChunkSlots slots = chunkSlots.get();
+        boolean completed = false;
+        PendingChunk chunk;
+        while ((chunk = pendingChunks.poll()) != null) {
+            completed |= place(slots, chunk.operationsOrder, chunk.operationsOrderSubListNumber, chunk.operands, chunk.hash);
+        }
+        return completed;
+    }
+
+    private boolean place(ChunkSlots slots, int operationsOrder, int operationsOrderSubListNumber, OperandBuffer operands, ExpressionHash hash) {
+        int slot = slots.slotIndex(operationsOrder, operationsOrderSubListNumber);
+        if (!slots.chunks.compareAndSet(slot, null, operands)) {
+            return false;
+        }
+        slots.hashes.set(slot, hash);
+        addReceivedOperands(operands.size());
+        return receivedChunks.incrementAndGet() == slots.chunks.length() && assembled.compareAndSet(false, true);
+    }
+
+    private static class ChunkSlots {
+        private final int[] orderOffsets;
+        private final AtomicReferenceArray<OperandBuffer> chunks;
+        private final AtomicReferenceArray<ExpressionHash> hashes;
+
+        ChunkSlots(int[] chunksPerOrder) {
+            if (chunksPerOrder.length == 0) {
+                throw new IllegalArgumentException();
+            }
+            orderOffsets = new int[chunksPerOrder.length + 1];
+            for (int i = 0; i < chunksPerOrder.length; i++) {
+                if (chunksPerOrder[i] <= 0) {
+                    throw new IllegalArgumentException();
+                }
+                orderOffsets[i + 1] = orderOffsets[i] + chunksPerOrder[i];
+            }
+            chunks = new AtomicReferenceArray<>(orderOffsets[chunksPerOrder.length]);
+            hashes = new AtomicReferenceArray<>(chunks.length());
+        }
+
+        int slotIndex(int operationsOrder, int operationsOrderSubListNumber) {
+            if (operationsOrder < 1 || operationsOrder >= orderOffsets.length) {
+                throw new IllegalArgumentException("Unknown operations order " + operationsOrder);
+            }
+            int slot = orderOffsets[operationsOrder - 1] + operationsOrderSubListNumber - 1;
+            if (operationsOrderSubListNumber < 1 || slot >= orderOffsets[operationsOrder]) {
+                throw new IllegalArgumentException("Unknown chunk " + operationsOrderSubListNumber + " of order " + operationsOrder);
+            }
+            return slot;
+        }
+    }
+
+    private static class PendingChunk {
+        private final int operationsOrder;
+        private final int operationsOrderSubListNumber;
+        private final OperandBuffer operands;
+        private final ExpressionHash hash;
+
+        PendingChunk(int operationsOrder, int operationsOrderSubListNumber, OperandBuffer operands, ExpressionHash hash) {
+            this.operationsOrder = operationsOrder;
+            this.operationsOrderSubListNumber = operationsOrderSubListNumber;
+            this.operands = operands;
+            this.hash = hash;
+        }
+    }
 }
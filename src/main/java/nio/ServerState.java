@@ -9,5 +9,6 @@ public enum ServerState {
     SENDING,
     DONE,
     CANCEL,
-    CLOSE
+    CLOSE,
+    EXPIRED
 }
@@ -0,0 +1,12 @@
+package nio;
+
+public interface StageQueue<T> {
+
+    boolean offer(T item);
+
+    T poll();
+
+    int size();
+
+    int capacity();
+}
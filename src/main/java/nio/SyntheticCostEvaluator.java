@@ -0,0 +1,53 @@
+package nio;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load-testing evaluator: delegates the calculation and then adds a configurable cost,
+ * a fixed part per expression plus a part per operand. The cost is either parked,
+ * like the old fixed 50 ms sleep, or burned in a busy spin to simulate CPU-bound work.
+ */
+public class SyntheticCostEvaluator implements ExpressionEvaluator {
+
+    private final ExpressionEvaluator delegate;
+    private final long fixedCostNanos;
+    private final long perOperandCostNanos;
+    private final boolean busySpin;
+
+    public SyntheticCostEvaluator(ExpressionEvaluator delegate, long fixedCostNanos, long perOperandCostNanos, boolean busySpin) {
+        if (delegate == null) {
+            throw new NullPointerException();
+        }
+        if (fixedCostNanos < 0 || perOperandCostNanos < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.delegate = delegate;
+        this.fixedCostNanos = fixedCostNanos;
+        this.perOperandCostNanos = perOperandCostNanos;
+        this.busySpin = busySpin;
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands) {
+        return evaluate(operands, PrecisionMode.EXACT);
+    }
+
+    @Override
+    public double evaluate(OperandBuffer operands, PrecisionMode precisionMode) {
+        long start = System.nanoTime();
+        double result = delegate.evaluate(operands, precisionMode);
+        long deadline = start + fixedCostNanos + perOperandCostNanos * operands.size();
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (busySpin) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(remaining);
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
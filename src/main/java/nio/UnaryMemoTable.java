@@ -0,0 +1,121 @@
+package nio;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size lock-free memo table for the transcendental unary kernels, keyed by operation
+ * and the raw bits of the argument. Open addressing with a short linear probe; when the probe
+ * finds no free slot the home slot is overwritten, so the table never grows. Entries are
+ * immutable and published with a release store, so a reader either sees a whole entry or none.
+ */
+public class UnaryMemoTable {
+
+    private static final int MAX_PROBES = 4;
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UnaryMemoTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        entries = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the value of the unary operation, computing it only if the pair is not in the table.
+     * EMPTY and ABS are cheaper than a lookup and are never memoized.
+     */
+    public double apply(OperandType operation, double a) {
+        if (operation == OperandType.EMPTY || operation == OperandType.ABS) {
+            return OperandsParser.calculateUnaryPart(operation, a);
+        }
+        long bits = Double.doubleToRawLongBits(a);
+        int home = index(operation, bits);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            Entry entry = entries.get((home + probe) & mask);
+            if (entry == null) {
+                break;
+            }
+            if (entry.bits == bits && entry.operation == operation) {
+                hits.increment();
+                return entry.result;
+            }
+        }
+        misses.increment();
+        double result = OperandsParser.calculateUnaryPart(operation, a);
+        Entry entry = new Entry(operation, bits, result);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (home + probe) & mask;
+            if (entries.get(slot) == null && entries.compareAndSet(slot, null, entry)) {
+                return result;
+            }
+        }
+        entries.lazySet(home, entry);
+        return result;
+    }
+
+    public int capacity() {
+        return entries.length();
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(entries.length(), hits.sum(), misses.sum());
+    }
+
+    private int index(OperandType operation, long bits) {
+        long hash = (bits ^ (long) operation.ordinal() << 59) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    private static class Entry {
+        private final OperandType operation;
+        private final long bits;
+        private final double result;
+
+        Entry(OperandType operation, long bits, double result) {
+            this.operation = operation;
+            this.bits = bits;
+            this.result = result;
+        }
+    }
+
+    public static class Metrics {
+        private final int capacity;
+        private final long hits;
+        private final long misses;
+
+        public Metrics(int capacity, long hits, long misses) {
+            this.capacity = capacity;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "capacity=" + capacity + " hits=" + hits + " misses=" + misses + " hitRate=" + getHitRate();
+        }
+    }
+}
@@ -2,9 +2,12 @@ import nio.Client;
 import nio.ClientState;
 import nio.Operand;
 import nio.OperandType;
+import nio.PrimitiveExpressionEvaluator;
 import nio.Result;
 import nio.Server;
+import nio.ServerConfig;
 import nio.ServerState;
+import nio.SyntheticCostEvaluator;
 import org.junit.*;
 import org.junit.rules.Timeout;
 import org.junit.runners.MethodSorters;
@@ -69,7 +72,8 @@ public class SystemTests {
     @Before
     public void startServer() {
         ports = new int[]{clientPortsCounter++, clientPortsCounter++, clientPortsCounter++};
-        server = new Server(ports, 4);
+        server = new Server(ports, 4, new ServerConfig()
+                .setExpressionEvaluator(new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), 50_000_000L, 0, false)));
         Runnable serverRunnable = server::start;
         serverRunnable.run();
         try {
@@ -0,0 +1,108 @@
+package nio;
+
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AffineReductionTest {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+    private static final OperandType[] binaryTypes = {OperandType.PLUS, OperandType.MINUS, OperandType.MULT, OperandType.DIVIDE};
+    private static final OperandType[] unaryTypes = {OperandType.EMPTY, OperandType.SIN, OperandType.COS, OperandType.ABS, OperandType.SQUARE};
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @AfterClass
+    public static void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void matchesSequentialFoldWithinTolerance() {
+        Random random = new Random(42);
+        for (int size : new int[]{2, 17, 1000, 100_000}) {
+            List<Operand> operands = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                OperandType second = i == size - 1 ? OperandType.EQUALS : binaryTypes[random.nextInt(binaryTypes.length)];
+                operands.add(new Operand(unaryTypes[random.nextInt(unaryTypes.length)], 0.5 + random.nextDouble() * 1.5, second));
+            }
+            double parallel = AffineReduction.calculate(OperandBuffer.of(operands), pool, 64);
+            double sequential = sequentialFold(operands);
+            double magnitude = Math.max(1, maxAccumulatorMagnitude(operands));
+            assertTrue(size + ": " + parallel + " vs " + sequential,
+                    Math.abs(parallel - sequential) <= AffineReduction.RELATIVE_TOLERANCE * magnitude);
+        }
+    }
+
+    @Test
+    public void exactForSmallIntegers() {
+        List<Operand> operands = Arrays.asList(
+                new Operand(2, OperandType.PLUS),
+                new Operand(3, OperandType.MULT),
+                new Operand(4, OperandType.MINUS),
+                new Operand(6, OperandType.DIVIDE),
+                new Operand(7, OperandType.EQUALS));
+        assertEquals(((2 + 3) * 4 - 6) / 7.0, AffineReduction.calculate(OperandBuffer.of(operands), pool, 1), 0);
+    }
+
+    @Test
+    public void missingEqualsGivesNaN() {
+        List<Operand> operands = Arrays.asList(new Operand(2, OperandType.PLUS), new Operand(3, OperandType.PLUS));
+        assertTrue(Double.isNaN(AffineReduction.calculate(OperandBuffer.of(operands), pool, 1)));
+    }
+
+    @Test
+    public void divisionByZeroFallsBack() {
+        List<Operand> operands = Arrays.asList(new Operand(2, OperandType.DIVIDE), new Operand(0, OperandType.EQUALS));
+        assertNull(AffineReduction.calculate(OperandBuffer.of(operands), pool, 1));
+        ExpressionEvaluator evaluator = new ParallelExpressionEvaluator(pool, 1, 1, new PrimitiveExpressionEvaluator());
+        assertEquals(Double.POSITIVE_INFINITY, evaluator.evaluate(OperandBuffer.of(operands)), 0);
+    }
+
+    private static double sequentialFold(List<Operand> operands) {
+        double result = unary(operands.get(0));
+        for (int i = 1; i < operands.size(); i++) {
+            result = apply(operands.get(i - 1).getOperationSecond(), result, unary(operands.get(i)));
+        }
+        return result;
+    }
+
+    private static double maxAccumulatorMagnitude(List<Operand> operands) {
+        double result = unary(operands.get(0));
+        double max = Math.abs(result);
+        for (int i = 1; i < operands.size(); i++) {
+            result = apply(operands.get(i - 1).getOperationSecond(), result, unary(operands.get(i)));
+            max = Math.max(max, Math.abs(result));
+        }
+        return max;
+    }
+
+    private static double unary(Operand operand) {
+        return OperandsParser.calculateUnaryPart(operand.getOperationFirst(), operand.getA());
+    }
+
+    private static double apply(OperandType type, double a, double b) {
+        switch (type) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case MULT:
+                return a * b;
+            default:
+                return a / b;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnswerBatcherTest {
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void drainsUpToMaxBatchSize() throws InterruptedException {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(16);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+        AnswerBatcher<Integer> batcher = new AnswerBatcher<>(queue, 4, 0);
+        List<Integer> batch = new ArrayList<>();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(0, 1, 2, 3), batch);
+        batch.clear();
+        batcher.nextBatch(batch);
+        batch.clear();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(8, 9), batch);
+        assertEquals(3, batcher.getBatches());
+        assertEquals(10, batcher.getAnswers());
+    }
+
+    @Test
+    public void lingersForLateAnswers() throws InterruptedException {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(16);
+        AnswerBatcher<Integer> batcher = new AnswerBatcher<>(queue, 3, 2_000_000);
+        batcher.submit(1);
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                batcher.submit(2);
+                batcher.submit(3);
+            } catch (InterruptedException ignored) {
+            }
+        }).start();
+        List<Integer> batch = new ArrayList<>();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(1, 2, 3), batch);
+    }
+
+    @Test
+    public void wakesUpForTheFirstAnswer() throws InterruptedException {
+        AnswerBatcher<Integer> batcher = new AnswerBatcher<>(new MpmcArrayQueue<>(16), 4, 0);
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                batcher.submit(7);
+            } catch (InterruptedException ignored) {
+            }
+        }).start();
+        List<Integer> batch = new ArrayList<>();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(7), batch);
+    }
+
+    @Test
+    public void boundedAndMeasured() {
+        AnswerBatcher<Integer> batcher = new AnswerBatcher<>(new MpmcArrayQueue<>(2), 4, 0);
+        assertTrue(batcher.trySubmit(1));
+        assertTrue(batcher.trySubmit(2));
+        assertFalse(batcher.trySubmit(3));
+        PipelineStage.Metrics metrics = batcher.getMetrics();
+        assertEquals("answer", metrics.getName());
+        assertEquals(2, metrics.getQueueDepth());
+        assertEquals(2, metrics.getMaxQueueDepth());
+        assertEquals(1, metrics.getRejected());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBatches() {
+        new AnswerBatcher<>(new MpmcArrayQueue<>(16), 0, 0);
+    }
+}
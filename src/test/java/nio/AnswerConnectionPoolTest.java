@@ -0,0 +1,70 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnswerConnectionPoolTest {
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    private static ByteBuffer frame(int value) {
+        ByteBuffer buffer = Frames.begin(ByteBuffer.allocate(Frames.HEADER_BYTES + Integer.BYTES));
+        buffer.putInt(value);
+        return Frames.finish(buffer);
+    }
+
+    private static int readValue(SocketChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Frames.HEADER_BYTES + Integer.BYTES);
+        while (buffer.hasRemaining()) {
+            channel.read(buffer);
+        }
+        return buffer.getInt(Frames.HEADER_BYTES);
+    }
+
+    @Test
+    public void reusesConnectionForSamePort() throws IOException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress("localhost", 0));
+            int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            AnswerConnectionPool pool = new AnswerConnectionPool(60_000);
+            pool.write(port, frame(1));
+            try (SocketChannel accepted = listener.accept()) {
+                pool.write(port, frame(2));
+                assertEquals(1, readValue(accepted));
+                assertEquals(2, readValue(accepted));
+            }
+            AnswerConnectionPool.Metrics metrics = pool.getMetrics();
+            assertEquals(1, metrics.getOpenConnections());
+            assertEquals(1, metrics.getOpened());
+            assertEquals(1, metrics.getReused());
+            pool.close();
+            assertEquals(0, pool.getMetrics().getOpenConnections());
+        }
+    }
+
+    @Test
+    public void closesIdleConnections() throws IOException, InterruptedException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress("localhost", 0));
+            int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            AnswerConnectionPool pool = new AnswerConnectionPool(50);
+            pool.write(port, frame(1));
+            Thread.sleep(300);
+            assertEquals(0, pool.getMetrics().getOpenConnections());
+            assertEquals(1, pool.getMetrics().getClosedIdle());
+            pool.write(port, frame(2));
+            assertEquals(2, pool.getMetrics().getOpened());
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class BinaryOperandCodecTest {
+    private final OperandCodec codec = new BinaryOperandCodec();
+
+    @Test
+    public void encodedSizeIsFixed() {
+        assertEquals(10, codec.encodedSize(new Operand(OperandType.COS, 10, OperandType.PLUS)));
+        assertEquals(10, codec.encodedSize(new Operand(Double.NaN, OperandType.EQUALS)));
+    }
+
+    @Test
+    public void encodeDecode() {
+        Operand operand = new Operand(OperandType.LN, -2.5, OperandType.DIVIDE);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        codec.encode(operand, buffer);
+        assertEquals(codec.encodedSize(operand), buffer.position());
+        buffer.flip();
+        Operand decoded = codec.decode(buffer);
+        assertEquals(OperandType.LN, decoded.getOperationFirst());
+        assertEquals(-2.5, decoded.getA(), 0);
+        assertEquals(OperandType.DIVIDE, decoded.getOperationSecond());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void encodeDecodeSequence() {
+        ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(null) * OperandType.values().length);
+        for (OperandType type : OperandType.values()) {
+            codec.encode(new Operand(type, type.ordinal(), type), buffer);
+        }
+        buffer.flip();
+        for (OperandType type : OperandType.values()) {
+            Operand decoded = codec.decode(buffer);
+            assertEquals(type, decoded.getOperationFirst());
+            assertEquals(type.ordinal(), decoded.getA(), 0);
+            assertEquals(type, decoded.getOperationSecond());
+        }
+    }
+}
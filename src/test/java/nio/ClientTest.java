@@ -11,7 +11,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ClientTest {
     static int portsCounter = 10700;
@@ -467,4 +473,200 @@ public class ClientTest {
             Assert.assertNull(e);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void bidirectionalClientCalculate() {
+        try {
+            int[] ports = new int[]{portsCounter++, portsCounter++};
+            Server server = new Server(ports, 4);
+            Runnable serverRunnable = server::start;
+            serverRunnable.run();
+            Thread.sleep(1000);
+            Client client1 = new Client(ports, 2);
+            Client client2 = new Client(ports, 2);
+            Assert.assertTrue(client1.isBidirectional());
+            Result result1 = client1.calculate(operands);
+            Result result2 = client2.calculate(operands2);
+            Assert.assertEquals(3.48278, result1.get(), 0.001);
+            Assert.assertEquals(3.26251584, result2.get(), 0.001);
+            client1.close();
+            client2.close();
+            Assert.assertTrue(client1.isClosed());
+            server.close();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Assert.assertNull(e);
+        }
+    }
+
+    @Test
+    public void calculateWithFastPrecision() {
+        try {
+            int[] ports = new int[]{portsCounter++, portsCounter++};
+            Server server = new Server(ports, 4);
+            Runnable serverRunnable = server::start;
+            serverRunnable.run();
+            Thread.sleep(1000);
+            Client client = new Client(ports, 2);
+            Result exact = client.calculate(operands2);
+            Result fast = client.calculate(operands2, PrecisionMode.FAST);
+            Assert.assertEquals(exact.get(), fast.get(), 1e-9);
+            client.close();
+            server.close();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Assert.assertNull(e);
+        }
+    }
+
+    @Test
+    public void calculateAllAnswersEveryExpression() {
+        try {
+            int[] ports = new int[]{portsCounter++, portsCounter++};
+            Server server = new Server(ports, 4);
+            Runnable serverRunnable = server::start;
+            serverRunnable.run();
+            Thread.sleep(1000);
+            Client client = new Client(ports, 2);
+            double expected = client.calculate(operands).get();
+            double expectedLong = client.calculate(operands2).get();
+            List<List<Operand>> expressions = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                expressions.add(i == 250 ? operands2 : operands);
+            }
+            List<Result> results = client.calculateAll(expressions);
+            Assert.assertEquals(500, results.size());
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertEquals(i == 250 ? expectedLong : expected, results.get(i).get(), 0);
+            }
+            client.close();
+            server.close();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Assert.assertNull(e);
+        }
+    }
+
+    @Test
+    public void concurrentSmallCalculationsShareBatches() {
+        try {
+            int[] ports = new int[]{portsCounter++, portsCounter++};
+            Server server = new Server(ports, 4);
+            Runnable serverRunnable = server::start;
+            serverRunnable.run();
+            Thread.sleep(1000);
+            Client client = new Client(ports, 2, new ClientConfig().setBatchLingerMicros(2000));
+            double expected = client.calculate(operands).get();
+            List<Result> results = new CopyOnWriteArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < 250; j++) {
+                        results.add(client.calculate(operands));
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (Result result : results) {
+                Assert.assertEquals(expected, result.get(), 0);
+            }
+            Assert.assertEquals(1001, client.getBatchMetrics().getRequests());
+            Assert.assertTrue(client.getBatchMetrics().getBatches() < 500);
+            client.close();
+            server.close();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Assert.assertNull(e);
+        }
+    }
+
+    @Test
+    public void calculateAsyncCompletesOnCallbackExecutor() {
+        try {
+            int[] ports = new int[]{portsCounter++, portsCounter++};
+            Server server = new Server(ports, 4);
+            Runnable serverRunnable = server::start;
+            serverRunnable.run();
+            Thread.sleep(1000);
+            ExecutorService callbackExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "callbacks"));
+            Client client = new Client(ports, 2, new ClientConfig().setCallbackExecutor(callbackExecutor));
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(client.calculateAsync(operands).thenApply(value -> Thread.currentThread().getName()));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(20, TimeUnit.SECONDS);
+            String callerThread = Thread.currentThread().getName();
+            for (CompletableFuture<String> future : futures) {
+                String callbackThread = future.get();
+                Assert.assertTrue(callbackThread.equals("callbacks") || callbackThread.equals(callerThread));
+            }
+            client.close();
+            server.close();
+            callbackExecutor.shutdown();
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            e.printStackTrace();
+            Assert.assertNull(e);
+        }
+    }
+
+    @Test
+    public void outstandingResultsTimeOut() {
+        try {
+            int[] ports = new int[]{portsCounter++, portsCounter++};
+            ServerConfig serverConfig = new ServerConfig()
+                    .setExpressionEvaluator(new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), 2_000_000_000L, 0, false));
+            Server server = new Server(ports, 2, serverConfig);
+            Runnable serverRunnable = server::start;
+            serverRunnable.run();
+            Thread.sleep(1000);
+            Client client = new Client(ports, 2, new ClientConfig().setResultTimeoutMillis(100));
+            Result result = client.calculate(operands);
+            Assert.assertTrue(Double.isNaN(result.get()));
+            Assert.assertEquals(ClientState.TIMEOUT, result.getState());
+            Assert.assertFalse(client.getResultMap().containsKey(result.getId()));
+            Thread.sleep(200);
+            Assert.assertEquals(1, client.getTimedOutResults());
+            Assert.assertEquals(ServerState.CANCEL, server.getResultsMap().get(result.getId()).getServerState());
+            client.close();
+            server.close();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Assert.assertNull(e);
+        }
+    }
+
+    @Test
+    public void serverDropsCalculationsPastTheirDeadline() {
+        try {
+            int[] ports = new int[]{portsCounter++, portsCounter++};
+            ServerConfig serverConfig = new ServerConfig()
+                    .setExpressionEvaluator(new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), 300_000_000L, 0, false));
+            Server server = new Server(ports, 2, serverConfig);
+            Runnable serverRunnable = server::start;
+            serverRunnable.run();
+            Thread.sleep(1000);
+            Client client = new Client(ports, 2, new ClientConfig().setAutoBatchMaxOperands(0));
+            Result blocking = client.calculate(operands);
+            Thread.sleep(100);
+            Result late = client.calculateWithDeadline(operands, 100);
+            Assert.assertTrue(Double.isNaN(late.get()));
+            Assert.assertEquals(ClientState.TIMEOUT, late.getState());
+            Assert.assertFalse(Double.isNaN(blocking.get()));
+            Thread.sleep(200);
+            Server.DeadlineMetrics deadlineMetrics = server.getDeadlineMetrics();
+            Assert.assertEquals(1, deadlineMetrics.getExpiredOperations());
+            Assert.assertEquals(1, deadlineMetrics.getDroppedAtEvaluate());
+            Assert.assertEquals(operands.size(), deadlineMetrics.getSavedOperands());
+            Assert.assertEquals(ServerState.EXPIRED, server.getResultsMap().get(late.getId()).getServerState());
+            client.close();
+            server.close();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Assert.assertNull(e);
+        }
+    }
+}
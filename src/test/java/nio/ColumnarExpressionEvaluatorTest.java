@@ -0,0 +1,75 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarExpressionEvaluatorTest {
+
+    private static final OperandType[] binaryTypes = {OperandType.PLUS, OperandType.MINUS, OperandType.MULT, OperandType.DIVIDE};
+    private static final OperandType[] unaryTypes = {OperandType.EMPTY, OperandType.SIN, OperandType.COS, OperandType.TAN,
+            OperandType.EXP, OperandType.ABS, OperandType.SQUARE, OperandType.LN};
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void columnarMatchesFold() {
+        Random random = new Random(11);
+        PrimitiveExpressionEvaluator primitive = new PrimitiveExpressionEvaluator();
+        ColumnarExpressionEvaluator columnar = new ColumnarExpressionEvaluator(1, primitive);
+        for (int size = 1; size <= 2000; size += 37) {
+            OperandBuffer operands = randomExpression(random, size);
+            for (PrecisionMode precisionMode : PrecisionMode.values()) {
+                assertEquals(Double.doubleToLongBits(primitive.evaluate(operands, precisionMode)),
+                        Double.doubleToLongBits(columnar.evaluate(operands, precisionMode)));
+            }
+        }
+    }
+
+    @Test
+    public void shortExpressionsGoToSequentialEvaluator() {
+        int[] calls = new int[1];
+        ExpressionEvaluator counting = operands -> {
+            calls[0]++;
+            return -1;
+        };
+        ColumnarExpressionEvaluator columnar = new ColumnarExpressionEvaluator(3, counting);
+        assertEquals(-1, columnar.evaluate(OperandBuffer.of(Arrays.asList(
+                new Operand(2, OperandType.MULT), new Operand(3, OperandType.EQUALS)))), 0);
+        assertEquals(7, columnar.evaluate(OperandBuffer.of(Arrays.asList(new Operand(OperandType.ABS, -2, OperandType.MULT),
+                new Operand(OperandType.SQUARE, 9, OperandType.PLUS), new Operand(1, OperandType.EQUALS)))), 0);
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    public void missingEqualsGivesNaN() {
+        ColumnarExpressionEvaluator columnar = new ColumnarExpressionEvaluator(1, new PrimitiveExpressionEvaluator());
+        OperandBuffer operands = OperandBuffer.of(Arrays.asList(new Operand(2, OperandType.PLUS), new Operand(3, OperandType.PLUS)));
+        assertTrue(Double.isNaN(columnar.evaluate(operands)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unaryOperationInBinaryPositionIsRejected() {
+        ColumnarExpressionEvaluator columnar = new ColumnarExpressionEvaluator(1, new PrimitiveExpressionEvaluator());
+        OperandBuffer operands = new OperandBuffer(2);
+        operands.add(OperandType.EMPTY, 2, OperandType.SIN);
+        operands.add(OperandType.EMPTY, 3, OperandType.EQUALS);
+        columnar.evaluate(operands);
+    }
+
+    private static OperandBuffer randomExpression(Random random, int size) {
+        OperandBuffer operands = new OperandBuffer(size);
+        for (int i = 0; i < size; i++) {
+            OperandType second = i == size - 1 ? OperandType.EQUALS : binaryTypes[random.nextInt(binaryTypes.length)];
+            operands.add(unaryTypes[random.nextInt(unaryTypes.length)], random.nextDouble() * 4 - 1, second);
+        }
+        return operands;
+    }
+}
@@ -0,0 +1,101 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledExpressionEvaluatorTest {
+
+    private static final OperandType[] binaryTypes = {OperandType.PLUS, OperandType.MINUS, OperandType.MULT, OperandType.DIVIDE};
+    private static final OperandType[] unaryTypes = {OperandType.EMPTY, OperandType.SIN, OperandType.COS, OperandType.TAN,
+            OperandType.EXP, OperandType.ABS, OperandType.SQUARE, OperandType.LN};
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void compiledPlanMatchesFold() {
+        Random random = new Random(7);
+        PrimitiveExpressionEvaluator primitive = new PrimitiveExpressionEvaluator();
+        CompiledExpressionEvaluator compiled = new CompiledExpressionEvaluator(16, 64, 1, primitive);
+        for (int size = 1; size <= 64; size++) {
+            OperandBuffer shape = randomExpression(random, size);
+            for (int round = 0; round < 3; round++) {
+                OperandBuffer operands = new OperandBuffer(size);
+                for (int i = 0; i < size; i++) {
+                    operands.add(shape.getOperationFirst(i), random.nextDouble() * 4, shape.getOperationSecond(i));
+                }
+                assertEquals(primitive.evaluate(operands), compiled.evaluate(operands), 0);
+            }
+        }
+        assertEquals(64, compiled.getCompilations());
+        assertEquals(16, compiled.getCachedPlans());
+        assertEquals(0, compiled.getFallbacks());
+    }
+
+    @Test
+    public void coldAndLongShapesFallBack() {
+        CompiledExpressionEvaluator compiled = new CompiledExpressionEvaluator(16, 2, 3, new PrimitiveExpressionEvaluator());
+        OperandBuffer operands = OperandBuffer.of(Arrays.asList(new Operand(2, OperandType.MULT), new Operand(3, OperandType.EQUALS)));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(6, compiled.evaluate(operands), 0);
+        }
+        assertEquals(2, compiled.getFallbacks());
+        assertEquals(3, compiled.getCompiledHits());
+        OperandBuffer tooLong = OperandBuffer.of(Arrays.asList(new Operand(1, OperandType.PLUS),
+                new Operand(2, OperandType.PLUS), new Operand(3, OperandType.EQUALS)));
+        assertEquals(6, compiled.evaluate(tooLong), 0);
+        assertEquals(3, compiled.getFallbacks());
+    }
+
+    @Test
+    public void oneOffShapesDoNotEvictHotPlans() {
+        Random random = new Random(11);
+        PrimitiveExpressionEvaluator primitive = new PrimitiveExpressionEvaluator();
+        CompiledExpressionEvaluator compiled = new CompiledExpressionEvaluator(2, 64, 2, primitive);
+        OperandBuffer first = randomExpression(random, 3);
+        OperandBuffer second = randomExpression(random, 4);
+        for (int i = 0; i < 2; i++) {
+            compiled.evaluate(first);
+            compiled.evaluate(second);
+        }
+        for (int size = 5; size <= 64; size++) {
+            OperandBuffer oneOff = randomExpression(random, size);
+            assertEquals(primitive.evaluate(oneOff), compiled.evaluate(oneOff), 0);
+        }
+        long hits = compiled.getCompiledHits();
+        compiled.evaluate(first);
+        compiled.evaluate(second);
+        assertEquals(2, compiled.getCompilations());
+        assertEquals(2, compiled.getCachedPlans());
+        assertEquals(hits + 2, compiled.getCompiledHits());
+    }
+
+    @Test
+    public void missingEqualsGivesNaN() {
+        CompiledExpressionEvaluator compiled = new CompiledExpressionEvaluator(16, 8, 1, new PrimitiveExpressionEvaluator());
+        OperandBuffer operands = OperandBuffer.of(Arrays.asList(new Operand(2, OperandType.PLUS), new Operand(3, OperandType.PLUS)));
+        assertTrue(Double.isNaN(compiled.evaluate(operands)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidShapeIsLeftToFallback() {
+        CompiledExpressionEvaluator compiled = new CompiledExpressionEvaluator(16, 8, 1, new PrimitiveExpressionEvaluator());
+        compiled.evaluate(OperandBuffer.of(Arrays.asList(new Operand(2, OperandType.EQUALS), new Operand(3, OperandType.EQUALS))));
+    }
+
+    private static OperandBuffer randomExpression(Random random, int size) {
+        OperandBuffer operands = new OperandBuffer(size);
+        for (int i = 0; i < size; i++) {
+            OperandType second = i == size - 1 ? OperandType.EQUALS : binaryTypes[random.nextInt(binaryTypes.length)];
+            operands.add(unaryTypes[random.nextInt(unaryTypes.length)], 0, second);
+        }
+        return operands;
+    }
+}
@@ -0,0 +1,132 @@
+package nio;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeficitRoundRobinQueueTest {
+
+    private final Map<String, Long> deadlines = new HashMap<>();
+
+    /**
+     * An item is "flow:cost:name".
+     */
+    private static final DeficitRoundRobinQueue.FlowFunction<String> FLOWS = new DeficitRoundRobinQueue.FlowFunction<String>() {
+        @Override
+        public int flowOf(String item) {
+            return Integer.parseInt(item.split(":")[0]);
+        }
+
+        @Override
+        public long costOf(String item) {
+            return Long.parseLong(item.split(":")[1]);
+        }
+    };
+
+    private final EarliestDeadlineQueue.DeadlineFunction<String> deadlineFunction = new EarliestDeadlineQueue.DeadlineFunction<String>() {
+        @Override
+        public boolean hasDeadline(String item) {
+            return deadlines.containsKey(item);
+        }
+
+        @Override
+        public long deadlineNanos(String item) {
+            return deadlines.get(item);
+        }
+    };
+
+    @Test
+    public void flowsTakeTurnsWhateverTheyQueued() {
+        DeficitRoundRobinQueue<String> queue = new DeficitRoundRobinQueue<>(64, 1, FLOWS, flow -> 1, null);
+        for (int i = 0; i < 4; i++) {
+            queue.offer("1:1:noisy" + i);
+        }
+        queue.offer("2:1:quiet0");
+        queue.offer("2:1:quiet1");
+        assertEquals("1:1:noisy0", queue.poll());
+        assertEquals("2:1:quiet0", queue.poll());
+        assertEquals("1:1:noisy1", queue.poll());
+        assertEquals("2:1:quiet1", queue.poll());
+        assertEquals("1:1:noisy2", queue.poll());
+        assertEquals("1:1:noisy3", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void weightsShareThroughput() {
+        DeficitRoundRobinQueue<String> queue = new DeficitRoundRobinQueue<>(64, 1, FLOWS, flow -> flow == 1 ? 3 : 1, null);
+        for (int i = 0; i < 6; i++) {
+            queue.offer("1:1:heavy" + i);
+            queue.offer("2:1:light" + i);
+        }
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            order.append(FLOWS.flowOf(queue.poll()));
+        }
+        assertEquals("11121112", order.toString());
+    }
+
+    @Test
+    public void costsAreChargedAgainstTheDeficit() {
+        DeficitRoundRobinQueue<String> queue = new DeficitRoundRobinQueue<>(64, 4, FLOWS, flow -> 1, null);
+        queue.offer("1:8:big0");
+        queue.offer("1:8:big1");
+        for (int i = 0; i < 8; i++) {
+            queue.offer("2:1:small" + i);
+        }
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            order.append(FLOWS.flowOf(queue.poll()));
+        }
+        assertEquals("2222122221", order.toString());
+    }
+
+    @Test
+    public void loneFlowEarnsTheRoundsItNeedsAtOnce() {
+        DeficitRoundRobinQueue<String> queue = new DeficitRoundRobinQueue<>(64, 1, FLOWS, flow -> 1, null);
+        queue.offer("1:1000000000000:huge");
+        queue.offer("1:1:small");
+        assertEquals("1:1000000000000:huge", queue.poll());
+        queue.offer("2:3:other");
+        assertEquals("1:1:small", queue.poll());
+        assertEquals("2:3:other", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void earliestDeadlineFirstWithinFlow() {
+        DeficitRoundRobinQueue<String> queue = new DeficitRoundRobinQueue<>(64, 1, FLOWS, flow -> 1, deadlineFunction);
+        long now = System.nanoTime();
+        deadlines.put("1:1:late", now + 2_000);
+        deadlines.put("1:1:early", now + 1_000);
+        queue.offer("1:1:none");
+        queue.offer("1:1:late");
+        queue.offer("1:1:early");
+        assertEquals("1:1:early", queue.poll());
+        assertEquals("1:1:late", queue.poll());
+        assertEquals("1:1:none", queue.poll());
+    }
+
+    @Test
+    public void boundedAndMeasured() {
+        DeficitRoundRobinQueue<String> queue = new DeficitRoundRobinQueue<>(2, 1, FLOWS, flow -> flow, null);
+        assertTrue(queue.offer("1:1:a"));
+        assertTrue(queue.offer("2:1:b"));
+        assertFalse(queue.offer("2:1:c"));
+        assertEquals(2, queue.size());
+        queue.poll();
+        Map<Integer, DeficitRoundRobinQueue.FlowMetrics> metrics = queue.getFlowMetrics();
+        assertEquals(1, metrics.get(1).getDequeued());
+        assertEquals(0, metrics.get(1).getQueued());
+        assertEquals(0, metrics.get(2).getDequeued());
+        assertEquals(1, metrics.get(2).getQueued());
+        assertEquals(2, metrics.get(2).getWeight());
+        assertTrue(metrics.get(1).getMaxDelayNanos() >= 0);
+    }
+}
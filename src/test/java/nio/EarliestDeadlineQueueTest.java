@@ -0,0 +1,72 @@
+package nio;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EarliestDeadlineQueueTest {
+
+    private final Map<String, Long> deadlines = new HashMap<>();
+
+    private final EarliestDeadlineQueue.DeadlineFunction<String> deadlineFunction = new EarliestDeadlineQueue.DeadlineFunction<String>() {
+        @Override
+        public boolean hasDeadline(String item) {
+            return deadlines.containsKey(item);
+        }
+
+        @Override
+        public long deadlineNanos(String item) {
+            return deadlines.get(item);
+        }
+    };
+
+    @Test
+    public void earliestDeadlineFirstThenArrivalOrder() {
+        EarliestDeadlineQueue<String> queue = new EarliestDeadlineQueue<>(16, deadlineFunction);
+        long now = System.nanoTime();
+        deadlines.put("late", now + 3_000);
+        deadlines.put("early", now + 1_000);
+        deadlines.put("alsoEarly", now + 1_000);
+        queue.offer("first");
+        queue.offer("late");
+        queue.offer("early");
+        queue.offer("second");
+        queue.offer("alsoEarly");
+        assertEquals("early", queue.poll());
+        assertEquals("alsoEarly", queue.poll());
+        assertEquals("late", queue.poll());
+        assertEquals("first", queue.poll());
+        assertEquals("second", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void comparesDeadlinesAcrossNanoTimeOverflow() {
+        EarliestDeadlineQueue<String> queue = new EarliestDeadlineQueue<>(16, deadlineFunction);
+        deadlines.put("beforeOverflow", Long.MAX_VALUE - 10);
+        deadlines.put("afterOverflow", Long.MIN_VALUE + 10);
+        queue.offer("afterOverflow");
+        queue.offer("beforeOverflow");
+        assertEquals("beforeOverflow", queue.poll());
+        assertEquals("afterOverflow", queue.poll());
+    }
+
+    @Test
+    public void bounded() {
+        EarliestDeadlineQueue<String> queue = new EarliestDeadlineQueue<>(2, deadlineFunction);
+        assertEquals(2, queue.capacity());
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertFalse(queue.offer("c"));
+        assertEquals(2, queue.size());
+        assertEquals("a", queue.poll());
+        assertTrue(queue.offer("c"));
+        assertEquals(2, queue.size());
+    }
+}
@@ -0,0 +1,44 @@
+package nio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionCostModelTest {
+
+    @Test
+    public void costAddsUnaryAndBinaryWeights() {
+        ExpressionCostModel costModel = new ExpressionCostModel();
+        OperandBuffer operands = OperandBuffer.of(Arrays.asList(
+                new Operand(OperandType.EMPTY, 1, OperandType.PLUS),
+                new Operand(OperandType.SIN, 2, OperandType.DIVIDE),
+                new Operand(OperandType.EXP, 3, OperandType.EQUALS)));
+        assertEquals(2 + 22 + 16, costModel.cost(operands));
+    }
+
+    @Test
+    public void transcendentalFunctionsCostMoreThanArithmetic() {
+        ExpressionCostModel costModel = new ExpressionCostModel();
+        for (OperandType expensive : new OperandType[]{OperandType.SIN, OperandType.COS, OperandType.TAN, OperandType.EXP, OperandType.LN}) {
+            assertTrue(costModel.getWeight(expensive) > costModel.getWeight(OperandType.EMPTY));
+            assertTrue(costModel.getWeight(expensive) > costModel.getWeight(OperandType.MULT));
+        }
+    }
+
+    @Test
+    public void customWeights() {
+        ExpressionCostModel costModel = new ExpressionCostModel().setWeight(OperandType.EMPTY, 0).setWeight(OperandType.PLUS, 5);
+        OperandBuffer operands = OperandBuffer.of(Arrays.asList(
+                new Operand(OperandType.EMPTY, 1, OperandType.PLUS),
+                new Operand(OperandType.EMPTY, 2, OperandType.PLUS)));
+        assertEquals(10, costModel.cost(operands));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeWeight() {
+        new ExpressionCostModel().setWeight(OperandType.SIN, -1);
+    }
+}
@@ -0,0 +1,46 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionEvaluatorTest {
+
+    private static final OperandBuffer expression = OperandBuffer.of(Arrays.asList(
+            new Operand(2, OperandType.PLUS),
+            new Operand(OperandType.ABS, -3, OperandType.MULT),
+            new Operand(4, OperandType.EQUALS)));
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void primitiveEvaluatorHasNoArtificialDelay() {
+        ExpressionEvaluator evaluator = new PrimitiveExpressionEvaluator();
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(20, evaluator.evaluate(expression), 0);
+        }
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    }
+
+    @Test
+    public void syntheticCostEvaluatorAddsCost() {
+        for (boolean busySpin : new boolean[]{false, true}) {
+            ExpressionEvaluator evaluator = new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), 20_000_000L, 1_000_000L, busySpin);
+            long start = System.nanoTime();
+            assertEquals(20, evaluator.evaluate(expression), 0);
+            assertTrue(System.nanoTime() - start >= 23_000_000L);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void syntheticCostEvaluatorRejectsNegativeCost() {
+        new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), -1, 0, false);
+    }
+}
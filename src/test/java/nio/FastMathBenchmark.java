@@ -0,0 +1,162 @@
+package nio;
+
+import java.util.Random;
+
+/**
+ * Compares exact and {@link PrecisionMode#FAST} evaluation: per-kernel cost and a whole expression
+ * of transcendental operands. Run the main method; timings are printed after warm-up rounds.
+ */
+public class FastMathBenchmark {
+
+    private static final int ARGUMENTS = 4096;
+    private static final int REPETITIONS = 500;
+    private static final int WARM_UP_ROUNDS = 10;
+    private static final OperandType[] KERNELS = {OperandType.SIN, OperandType.COS, OperandType.TAN, OperandType.EXP, OperandType.LN};
+
+    private static double sink;
+
+    public static void main(String[] args) {
+        double[] arguments = new double[ARGUMENTS];
+        Random random = new Random(42);
+        for (int i = 0; i < ARGUMENTS; i++) {
+            arguments[i] = 0.001 + random.nextDouble() * 10;
+        }
+        OperandBuffer expression = new OperandBuffer(ARGUMENTS);
+        for (int i = 0; i < ARGUMENTS; i++) {
+            expression.add(KERNELS[i % KERNELS.length], arguments[i], i == ARGUMENTS - 1 ? OperandType.EQUALS : OperandType.PLUS);
+        }
+        ExpressionEvaluator evaluator = new PrimitiveExpressionEvaluator();
+        for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+            StringBuilder report = new StringBuilder();
+            for (OperandType kernel : KERNELS) {
+                long exact = timeKernel(kernel, arguments, false);
+                long fast = timeKernel(kernel, arguments, true);
+                report.append(String.format("%-6s exact %6.2f ns  fast %6.2f ns  speedup %.2fx%n",
+                        kernel, (double) exact / REPETITIONS / ARGUMENTS, (double) fast / REPETITIONS / ARGUMENTS, (double) exact / fast));
+            }
+            long exact = timeExpression(evaluator, expression, PrecisionMode.EXACT);
+            long fast = timeExpression(evaluator, expression, PrecisionMode.FAST);
+            report.append(String.format("expression of %d operands: exact %.1f us  fast %.1f us  speedup %.2fx%n",
+                    ARGUMENTS, exact / 1000.0 / REPETITIONS, fast / 1000.0 / REPETITIONS, (double) exact / fast));
+            if (round == WARM_UP_ROUNDS) {
+                System.out.print(report);
+            }
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    private static long timeKernel(OperandType kernel, double[] arguments, boolean fast) {
+        long start = System.nanoTime();
+        double sum = 0;
+        for (int r = 0; r < REPETITIONS; r++) {
+            switch (kernel) {
+                case SIN:
+                    sum += fast ? fastSin(arguments) : exactSin(arguments);
+                    break;
+                case COS:
+                    sum += fast ? fastCos(arguments) : exactCos(arguments);
+                    break;
+                case TAN:
+                    sum += fast ? fastTan(arguments) : exactTan(arguments);
+                    break;
+                case EXP:
+                    sum += fast ? fastExp(arguments) : exactExp(arguments);
+                    break;
+                default:
+                    sum += fast ? fastLog(arguments) : exactLog(arguments);
+            }
+        }
+        sink += sum;
+        return System.nanoTime() - start;
+    }
+
+    private static long timeExpression(ExpressionEvaluator evaluator, OperandBuffer expression, PrecisionMode precisionMode) {
+        long start = System.nanoTime();
+        double sum = 0;
+        for (int r = 0; r < REPETITIONS; r++) {
+            sum += evaluator.evaluate(expression, precisionMode);
+        }
+        sink += sum;
+        return System.nanoTime() - start;
+    }
+
+    private static double exactSin(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.sin(argument);
+        }
+        return sum;
+    }
+
+    private static double fastSin(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.sin(argument);
+        }
+        return sum;
+    }
+
+    private static double exactCos(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.cos(argument);
+        }
+        return sum;
+    }
+
+    private static double fastCos(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.cos(argument);
+        }
+        return sum;
+    }
+
+    private static double exactTan(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.tan(argument);
+        }
+        return sum;
+    }
+
+    private static double fastTan(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.tan(argument);
+        }
+        return sum;
+    }
+
+    private static double exactExp(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.exp(argument);
+        }
+        return sum;
+    }
+
+    private static double fastExp(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.exp(argument);
+        }
+        return sum;
+    }
+
+    private static double exactLog(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.log(argument);
+        }
+        return sum;
+    }
+
+    private static double fastLog(double[] arguments) {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.log(argument);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,85 @@
+package nio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastMathTest {
+
+    private static final int SAMPLES = 1_000_000;
+
+    @Test
+    public void sinAndCosWithinAbsoluteBound() {
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = (random.nextDouble() * 2 - 1) * (i % 2 == 0 ? 10 : 0x1p19 * Math.PI / 2);
+            assertEquals(Math.sin(x), FastMath.sin(x), 1e-11);
+            assertEquals(Math.cos(x), FastMath.cos(x), 1e-11);
+        }
+    }
+
+    @Test
+    public void tanWithinDerivativeScaledBound() {
+        Random random = new Random(2);
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = (random.nextDouble() * 2 - 1) * 100;
+            double tan = Math.tan(x);
+            assertEquals(tan, FastMath.tan(x), 1e-11 * (1 + tan * tan));
+        }
+    }
+
+    @Test
+    public void expWithinRelativeBound() {
+        Random random = new Random(3);
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = (random.nextDouble() * 2 - 1) * 708;
+            double exp = Math.exp(x);
+            assertEquals(exp, FastMath.exp(x), 1e-13 * exp);
+        }
+    }
+
+    @Test
+    public void logWithinRelativeBound() {
+        Random random = new Random(4);
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = i % 2 == 0 ? Math.exp((random.nextDouble() * 2 - 1) * 700) : 1 + (random.nextDouble() * 2 - 1) * 0.02;
+            double log = Math.log(x);
+            assertEquals(log, FastMath.log(x), 1e-10 * Math.abs(log));
+        }
+    }
+
+    @Test
+    public void valuesOutsideApproximatedRangesGoToMath() {
+        // Math may round differently once intrinsified, hence one ulp.
+        for (double x : new double[]{Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e300, -1e300}) {
+            assertEquals(Math.sin(x), FastMath.sin(x), Math.ulp(Math.sin(x)));
+            assertEquals(Math.cos(x), FastMath.cos(x), Math.ulp(Math.cos(x)));
+            assertEquals(Math.tan(x), FastMath.tan(x), Math.ulp(Math.tan(x)));
+        }
+        for (double x : new double[]{Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 709.9, -745.5}) {
+            assertEquals(Math.exp(x), FastMath.exp(x), Math.ulp(Math.exp(x)));
+        }
+        for (double x : new double[]{0.0, -0.0, -1.0, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY}) {
+            assertEquals(Math.log(x), FastMath.log(x), 0);
+        }
+        assertEquals(0, FastMath.log(1), 0);
+        assertEquals(1, FastMath.exp(0), 0);
+        assertEquals(0, FastMath.sin(0), 0);
+        assertTrue(Double.isNaN(FastMath.tan(Double.NaN)));
+    }
+
+    @Test
+    public void fastModeEvaluatesExpressions() {
+        OperandBuffer operands = new OperandBuffer();
+        OperandType[] unaryTypes = {OperandType.SIN, OperandType.COS, OperandType.TAN, OperandType.EXP, OperandType.LN};
+        for (int i = 0; i < 100; i++) {
+            operands.add(unaryTypes[i % unaryTypes.length], 0.1 + i / 100.0, i == 99 ? OperandType.EQUALS : OperandType.PLUS);
+        }
+        ExpressionEvaluator evaluator = new PrimitiveExpressionEvaluator();
+        double exact = evaluator.evaluate(operands, PrecisionMode.EXACT);
+        assertEquals(exact, evaluator.evaluate(operands, PrecisionMode.FAST), 1e-9 * Math.abs(exact));
+    }
+}
@@ -0,0 +1,195 @@
+package nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameDecoderTest {
+
+    private static ByteBuffer frame(int... values) {
+        ByteBuffer buffer = Frames.begin(ByteBuffer.allocate(Frames.HEADER_BYTES + values.length * Integer.BYTES));
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return Frames.finish(buffer);
+    }
+
+    private static byte[] concat(ByteBuffer... frames) {
+        int size = 0;
+        for (ByteBuffer frame : frames) {
+            size += frame.remaining();
+        }
+        ByteBuffer result = ByteBuffer.allocate(size);
+        for (ByteBuffer frame : frames) {
+            result.put(frame);
+        }
+        return result.array();
+    }
+
+    private static class ChunkedChannel implements ReadableByteChannel {
+        private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+
+        void add(byte[] bytes, int from, int to) {
+            chunks.add(ByteBuffer.wrap(bytes, from, to - from));
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            ByteBuffer chunk = chunks.poll();
+            if (chunk == null) {
+                return 0;
+            }
+            int n = Math.min(dst.remaining(), chunk.remaining());
+            for (int i = 0; i < n; i++) {
+                dst.put(chunk.get());
+            }
+            if (chunk.hasRemaining()) {
+                chunks.addFirst(chunk);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void decodesCoalescedFrames() throws IOException {
+        byte[] bytes = concat(frame(1, 2), frame(3), frame(4, 5, 6));
+        ChunkedChannel channel = new ChunkedChannel();
+        channel.add(bytes, 0, bytes.length);
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.read(channel);
+        assertEquals(2, decoder.nextFrame().remaining() / Integer.BYTES);
+        assertEquals(3, decoder.nextFrame().getInt());
+        ByteBuffer last = decoder.nextFrame();
+        assertEquals(4, last.getInt());
+        assertEquals(5, last.getInt());
+        assertEquals(6, last.getInt());
+        assertNull(decoder.nextFrame());
+    }
+
+    @Test
+    public void reassemblesSplitFrames() throws IOException {
+        byte[] bytes = concat(frame(7, 8), frame(9));
+        ChunkedChannel channel = new ChunkedChannel();
+        FrameDecoder decoder = new FrameDecoder();
+        channel.add(bytes, 0, 2);
+        decoder.read(channel);
+        assertNull(decoder.nextFrame());
+        channel.add(bytes, 2, 10);
+        decoder.read(channel);
+        assertNull(decoder.nextFrame());
+        channel.add(bytes, 10, bytes.length);
+        decoder.read(channel);
+        ByteBuffer first = decoder.nextFrame();
+        assertEquals(7, first.getInt());
+        assertEquals(8, first.getInt());
+        assertEquals(9, decoder.nextFrame().getInt());
+        assertNull(decoder.nextFrame());
+        assertEquals(0, decoder.bufferedBytes());
+    }
+
+    @Test
+    public void growsForLargeFrames() throws IOException {
+        int[] values = new int[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        byte[] bytes = concat(frame(values));
+        ChunkedChannel channel = new ChunkedChannel();
+        channel.add(bytes, 0, bytes.length);
+        FrameDecoder decoder = new FrameDecoder(64, FrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+        decoder.read(channel);
+        ByteBuffer frame = decoder.nextFrame();
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(i, frame.getInt());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOversizedFrames() throws IOException {
+        byte[] bytes = concat(frame(1, 2, 3));
+        ChunkedChannel channel = new ChunkedChannel();
+        channel.add(bytes, 0, bytes.length);
+        FrameDecoder decoder = new FrameDecoder(64, 8);
+        decoder.read(channel);
+        decoder.nextFrame();
+    }
+
+    @Test
+    public void stopsReadingOnceAFrameIsBuffered() throws IOException {
+        ChunkedChannel channel = new ChunkedChannel();
+        for (int i = 0; i < 100; i++) {
+            byte[] bytes = concat(frame(i));
+            channel.add(bytes, 0, bytes.length);
+        }
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.read(channel);
+        assertEquals(Frames.HEADER_BYTES + Integer.BYTES, decoder.bufferedBytes());
+        assertEquals(0, decoder.nextFrame().getInt());
+        assertNull(decoder.nextFrame());
+        decoder.read(channel);
+        assertEquals(1, decoder.nextFrame().getInt());
+    }
+
+    @Test
+    public void neverBuffersMoreThanTheLargestFrame() throws IOException {
+        int[] values = new int[25];
+        byte[] bytes = concat(frame(values), frame(values), frame(values));
+        ChunkedChannel channel = new ChunkedChannel();
+        channel.add(bytes, 0, bytes.length);
+        FrameDecoder decoder = new FrameDecoder(16, values.length * Integer.BYTES);
+        decoder.read(channel);
+        assertTrue(decoder.bufferedBytes() <= Frames.HEADER_BYTES + values.length * Integer.BYTES);
+        assertEquals(values.length * Integer.BYTES, decoder.nextFrame().remaining());
+    }
+
+    @Test(timeout = 10000)
+    public void writeWaitsForAFullNonBlockingChannel() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+             SocketChannel sender = SocketChannel.open(server.getLocalAddress());
+             SocketChannel receiver = server.accept();
+             Selector writeSelector = Selector.open()) {
+            sender.configureBlocking(false);
+            int[] values = new int[1 << 20];
+            values[values.length - 1] = 42;
+            ByteBuffer frame = frame(values);
+            int frameBytes = frame.remaining();
+            Thread writer = new Thread(() -> {
+                try {
+                    Frames.write(sender, frame, writeSelector);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writer.start();
+            Thread.sleep(100);
+            ByteBuffer received = ByteBuffer.allocate(frameBytes);
+            while (received.hasRemaining()) {
+                receiver.read(received);
+            }
+            writer.join();
+            assertEquals(values.length * Integer.BYTES, received.getInt(0));
+            assertEquals(42, received.getInt(frameBytes - Integer.BYTES));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void expiresInDeadlineOrderAcrossRounds() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, 4);
+        List<Integer> expired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        for (int delay : new int[]{120, 10, 60}) {
+            timer.newTimeout(() -> {
+                expired.add(delay);
+                done.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        done.await();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(120));
+        assertEquals(10, (int) expired.get(0));
+        assertEquals(60, (int) expired.get(1));
+        assertEquals(120, (int) expired.get(2));
+        assertEquals(3, timer.getExpiredTimeouts());
+        assertEquals(0, timer.getPendingTimeouts());
+        timer.stop();
+    }
+
+    @Test
+    public void cancelledTimeoutsNeverRun() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, 8);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch last = new CountDownLatch(1);
+        for (int i = 0; i < 100_000; i++) {
+            HashedWheelTimer.Timeout timeout = timer.newTimeout(runs::incrementAndGet, 500, TimeUnit.MILLISECONDS);
+            if (i % 2 == 0) {
+                assertTrue(timeout.cancel());
+                assertFalse(timeout.cancel());
+                assertTrue(timeout.isCancelled());
+            }
+        }
+        timer.newTimeout(last::countDown, 600, TimeUnit.MILLISECONDS);
+        last.await();
+        assertEquals(50_000, runs.get());
+        assertEquals(0, timer.getPendingTimeouts());
+        timer.stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroTick() {
+        new HashedWheelTimer("test-timer", 0, 8);
+    }
+}
@@ -0,0 +1,100 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IoReactorTest {
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    @Test
+    public void writeToSlowReaderDoesNotBlock() throws IOException, InterruptedException {
+        int replyBytes = 8 * 1024 * 1024;
+        CountDownLatch written = new CountDownLatch(1);
+        AtomicReference<IoReactor> owner = new AtomicReference<>();
+        IoReactor ioReactor = new IoReactor("test-io-reactor", (frame, channel) -> {
+            ByteBuffer reply = ByteBuffer.allocate(replyBytes);
+            for (int i = 0; i < replyBytes; i++) {
+                reply.put((byte) i);
+            }
+            reply.flip();
+            owner.get().write(channel, reply);
+            written.countDown();
+            return true;
+        });
+        owner.set(ioReactor);
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("localhost", 0));
+            ioReactor.start();
+            try (SocketChannel client = SocketChannel.open(serverChannel.getLocalAddress())) {
+                ioReactor.assign(serverChannel.accept());
+                ByteBuffer request = Frames.begin(ByteBuffer.allocate(16));
+                request.putInt(1);
+                client.write(Frames.finish(request));
+                assertTrue(written.await(5, TimeUnit.SECONDS));
+                ByteBuffer received = ByteBuffer.allocate(replyBytes);
+                while (received.hasRemaining()) {
+                    client.read(received);
+                }
+                for (int i = 0; i < replyBytes; i++) {
+                    assertEquals((byte) i, received.get(i));
+                }
+            }
+        } finally {
+            ioReactor.close();
+        }
+    }
+
+    @Test
+    public void turnedDownFramesAreOfferedAgainInOrder() throws IOException, InterruptedException {
+        int frames = 100;
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger offers = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(frames);
+        IoReactor ioReactor = new IoReactor("test-io-reactor", (frame, channel) -> {
+            if (offers.incrementAndGet() % 3 != 0) {
+                frame.getInt();
+                return false;
+            }
+            handled.add(frame.getInt());
+            done.countDown();
+            return true;
+        });
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("localhost", 0));
+            ioReactor.start();
+            try (SocketChannel client = SocketChannel.open(serverChannel.getLocalAddress())) {
+                ioReactor.assign(serverChannel.accept());
+                for (int i = 0; i < frames; i++) {
+                    ByteBuffer request = Frames.begin(ByteBuffer.allocate(16));
+                    request.putInt(i);
+                    client.write(Frames.finish(request));
+                }
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            ioReactor.close();
+        }
+        for (int i = 0; i < frames; i++) {
+            assertEquals(i, (int) handled.get(i));
+        }
+    }
+}
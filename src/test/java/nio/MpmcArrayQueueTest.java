@@ -0,0 +1,109 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MpmcArrayQueueTest {
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    @Test
+    public void fifoAndBounded() {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(3);
+        assertEquals(4, queue.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.offer(5));
+        assertEquals(Integer.valueOf(5), queue.poll());
+    }
+
+    @Test
+    public void concurrentProducersAndConsumers() throws InterruptedException {
+        MpmcArrayQueue<Long> queue = new MpmcArrayQueue<>(64);
+        int producers = 4;
+        int itemsPerProducer = 50_000;
+        AtomicLong sum = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(producers);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                for (long i = 1; i <= itemsPerProducer; i++) {
+                    while (!queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            }));
+        }
+        for (int c = 0; c < 3; c++) {
+            threads.add(new Thread(() -> {
+                while (done.getCount() > 0 || queue.size() > 0) {
+                    Long item = queue.poll();
+                    if (item != null) {
+                        sum.addAndGet(item);
+                        count.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals((long) producers * itemsPerProducer, count.get());
+        assertEquals((long) producers * itemsPerProducer * (itemsPerProducer + 1) / 2, sum.get());
+    }
+
+    @Test
+    public void pipelineStageProcessesEverySubmittedItem() throws InterruptedException {
+        int items = 10_000;
+        AtomicLong sum = new AtomicLong();
+        CountDownLatch processed = new CountDownLatch(items);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 3, new MpmcArrayQueue<>(16), item -> {
+            sum.addAndGet(item);
+            processed.countDown();
+        });
+        stage.start();
+        for (int i = 1; i <= items; i++) {
+            stage.submit(i);
+        }
+        processed.await();
+        while (stage.getMetrics().getProcessed() < items) {
+            Thread.sleep(1);
+        }
+        stage.close();
+        assertEquals((long) items * (items + 1) / 2, sum.get());
+        assertTrue(stage.getMetrics().getMaxQueueDepth() <= 16);
+    }
+
+    @Test
+    public void fullStageRejectsWithoutWaiting() {
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, new MpmcArrayQueue<>(2), item -> {
+        });
+        assertTrue(stage.trySubmit(1));
+        assertTrue(stage.trySubmit(2));
+        assertTrue(stage.isFull());
+        assertFalse(stage.trySubmit(3));
+        assertEquals(1, stage.getMetrics().getRejected());
+    }
+}
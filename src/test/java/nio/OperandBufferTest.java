@@ -0,0 +1,69 @@
+package nio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class OperandBufferTest {
+
+    @Test
+    public void growsAndKeepsOperands() {
+        OperandBuffer buffer = new OperandBuffer(0);
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(OperandType.values()[i % OperandType.values().length], i, OperandType.PLUS);
+        }
+        assertEquals(1000, buffer.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, buffer.getValue(i), 0);
+            assertEquals(OperandType.values()[i % OperandType.values().length], buffer.getOperationFirst(i));
+            assertEquals(OperandType.PLUS, buffer.getOperationSecond(i));
+        }
+    }
+
+    @Test
+    public void packsEveryOperandTypePair() {
+        OperandBuffer buffer = new OperandBuffer();
+        for (OperandType first : OperandType.values()) {
+            for (OperandType second : OperandType.values()) {
+                buffer.add(first, 1, second);
+                assertEquals(first, buffer.getOperationFirst(buffer.size() - 1));
+                assertEquals(second, buffer.getOperationSecond(buffer.size() - 1));
+            }
+        }
+    }
+
+    @Test
+    public void addAllAppendsInOrder() {
+        List<Operand> first = Arrays.asList(new Operand(1, OperandType.PLUS), new Operand(OperandType.SIN, 2, OperandType.MULT));
+        List<Operand> second = Arrays.asList(new Operand(3, OperandType.EQUALS));
+        OperandBuffer buffer = OperandBuffer.of(first);
+        buffer.addAll(OperandBuffer.of(second));
+        assertEquals(3, buffer.size());
+        assertEquals("EMPTY 1.0 PLUS SIN 2.0 MULT EMPTY 3.0 EQUALS ", buffer.toList().stream().map(Operand::toString).reduce("", String::concat));
+    }
+
+    @Test
+    public void binaryCodecDecodesIntoBuffer() {
+        BinaryOperandCodec codec = new BinaryOperandCodec();
+        ByteBuffer bytes = ByteBuffer.allocate(2 * BinaryOperandCodec.OPERAND_BYTES);
+        codec.encode(new Operand(OperandType.LN, 5, OperandType.DIVIDE), bytes);
+        codec.encode(new Operand(7, OperandType.EQUALS), bytes);
+        bytes.flip();
+        OperandBuffer buffer = new OperandBuffer();
+        codec.decode(bytes, buffer);
+        codec.decode(bytes, buffer);
+        assertEquals(OperandType.LN, buffer.getOperationFirst(0));
+        assertEquals(OperandType.DIVIDE, buffer.getOperationSecond(0));
+        assertEquals(7, buffer.getValue(1), 0);
+        assertEquals(OperandType.EQUALS, buffer.getOperationSecond(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexPastSize() {
+        new OperandBuffer(8).getValue(0);
+    }
+}
@@ -0,0 +1,70 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RequestBatcherTest {
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void closesBatchAtMaxBytesAndCarriesOverflow() throws InterruptedException {
+        RequestBatcher<Integer> batcher = new RequestBatcher<>(10, 0, Integer::intValue);
+        for (int bytes : new int[]{4, 4, 4, 8, 2}) {
+            batcher.add(bytes);
+        }
+        List<Integer> batch = new ArrayList<>();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(4, 4), batch);
+        batch.clear();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(4), batch);
+        batch.clear();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(8, 2), batch);
+        RequestBatcher.Metrics metrics = batcher.getMetrics();
+        assertEquals(3, metrics.getBatches());
+        assertEquals(5, metrics.getRequests());
+        assertEquals(22, metrics.getBytes());
+        assertEquals(22.0 / 30, metrics.getFillRatio(), 1e-12);
+    }
+
+    @Test
+    public void lingersForLateRequests() throws InterruptedException {
+        RequestBatcher<Integer> batcher = new RequestBatcher<>(100, 500_000, Integer::intValue);
+        batcher.add(1);
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                batcher.add(2);
+                batcher.add(3);
+            } catch (InterruptedException ignored) {
+            }
+        }).start();
+        List<Integer> batch = new ArrayList<>();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(1, 2, 3), batch);
+    }
+
+    @Test
+    public void sendsAloneAfterLinger() throws InterruptedException {
+        RequestBatcher<Integer> batcher = new RequestBatcher<>(100, 1000, Integer::intValue);
+        batcher.add(1);
+        List<Integer> batch = new ArrayList<>();
+        batcher.nextBatch(batch);
+        assertEquals(Arrays.asList(1), batch);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBatches() {
+        new RequestBatcher<Integer>(0, 0, Integer::intValue);
+    }
+}
@@ -0,0 +1,90 @@
+package nio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+
+    @Test
+    public void chunkHashesComposeToWholeExpressionHash() {
+        OperandBuffer first = OperandBuffer.of(Arrays.asList(new Operand(1, OperandType.PLUS), new Operand(OperandType.SIN, 2, OperandType.MULT)));
+        OperandBuffer second = OperandBuffer.of(Arrays.asList(new Operand(3, OperandType.MINUS), new Operand(4, OperandType.EQUALS)));
+        OperandBuffer whole = new OperandBuffer();
+        whole.addAll(first);
+        whole.addAll(second);
+        assertEquals(ExpressionHash.of(whole), ExpressionHash.of(first).then(ExpressionHash.of(second)));
+        assertNotEquals(ExpressionHash.of(whole), ExpressionHash.of(second).then(ExpressionHash.of(first)));
+    }
+
+    @Test
+    public void hashDependsOnOperationsAndValues() {
+        ExpressionHash hash = hash(1, OperandType.PLUS);
+        assertNotEquals(hash, hash(1, OperandType.MINUS));
+        assertNotEquals(hash, hash(1.0000000000000002, OperandType.PLUS));
+        assertEquals(hash, hash(1, OperandType.PLUS));
+    }
+
+    @Test
+    public void returnsCachedResultAndCountsMetrics() {
+        ResultCache cache = new ResultCache(100, 1000);
+        assertNull(cache.get(key(1)));
+        cache.put(key(1), 42);
+        assertEquals(42, cache.get(key(1)), 0);
+        ResultCache.Metrics metrics = cache.getMetrics();
+        assertEquals(1, metrics.getHits());
+        assertEquals(1, metrics.getMisses());
+        assertEquals(1, metrics.getSize());
+    }
+
+    @Test
+    public void entriesExpireAfterTtl() {
+        AtomicLong now = new AtomicLong();
+        ResultCache cache = new ResultCache(100, 10, now::get);
+        cache.put(key(1), 42);
+        now.addAndGet(9_000_000);
+        assertEquals(42, cache.get(key(1)), 0);
+        now.addAndGet(1_000_000);
+        assertNull(cache.get(key(1)));
+        assertEquals(1, cache.getMetrics().getExpirations());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void staysBoundedAndKeepsFrequentEntries() {
+        ResultCache cache = new ResultCache(100, 60_000);
+        for (int hot = 0; hot < 50; hot++) {
+            cache.put(key(hot), hot);
+            for (int i = 0; i < 5; i++) {
+                cache.get(key(hot));
+            }
+        }
+        for (int cold = 1000; cold < 11_000; cold++) {
+            cache.put(key(cold), cold);
+            cache.get(key(cold % 50));
+        }
+        assertTrue(cache.size() <= 100);
+        int hotHits = 0;
+        for (int hot = 0; hot < 50; hot++) {
+            if (cache.get(key(hot)) != null) {
+                hotHits++;
+            }
+        }
+        assertEquals(50, hotHits);
+        assertTrue(cache.getMetrics().getRejected() > 0);
+    }
+
+    private static ExpressionHash key(int value) {
+        return hash(value, OperandType.EQUALS);
+    }
+
+    private static ExpressionHash hash(double value, OperandType operationSecond) {
+        return ExpressionHash.of(OperandBuffer.of(Arrays.asList(new Operand(value, operationSecond))));
+    }
+}
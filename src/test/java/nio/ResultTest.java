@@ -8,6 +8,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.*;
 
@@ -139,4 +143,132 @@ public class ResultTest {
             assertNull(e);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void futureViewOfPendingResult() throws InterruptedException {
+        Result result = new Result(idCounter++);
+        assertFalse(result.isDone());
+        assertFalse(result.isCancelled());
+        try {
+            result.get(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+        result.set(4);
+        result.setState(ClientState.DONE);
+        assertTrue(result.isDone());
+        assertFalse(result.cancel(true));
+        try {
+            assertEquals(4, result.get(10, TimeUnit.MILLISECONDS), 0);
+        } catch (TimeoutException e) {
+            assertNull(e);
+        }
+    }
+
+    @Test
+    public void completableFutureIsCompletedOnExecutor() throws Exception {
+        Result result = new Result(idCounter++);
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<Double> future = result.toCompletableFuture(tasks::add);
+        assertTrue(tasks.isEmpty());
+        result.set(2);
+        result.setState(ClientState.DONE);
+        assertFalse(future.isDone());
+        tasks.forEach(Runnable::run);
+        assertEquals(2, future.get(), 0);
+        Result cancelled = new Result(idCounter++);
+        cancelled.setState(ClientState.CANCEL);
+        CompletableFuture<Double> cancelledFuture = cancelled.toCompletableFuture(Runnable::run);
+        assertTrue(cancelledFuture.isCancelled());
+    }
+
+    @Test
+    public void completionWakesAllWaiters() throws InterruptedException {
+        Result result = new Result(idCounter++);
+        List<Double> values = new CopyOnWriteArrayList<>();
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            boolean timed = i % 2 == 1;
+            Thread waiter = new Thread(() -> {
+                try {
+                    values.add(timed ? result.get(10, TimeUnit.SECONDS) : result.get());
+                } catch (InterruptedException | TimeoutException e) {
+                    e.printStackTrace();
+                }
+            });
+            waiters.add(waiter);
+            waiter.start();
+        }
+        while (!result.isWaiting()) {
+            Thread.sleep(1);
+        }
+        result.set(5);
+        result.setState(ClientState.DONE);
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+        assertEquals(8, values.size());
+        for (double value : values) {
+            assertEquals(5, value, 0);
+        }
+        assertFalse(result.isWaiting());
+    }
+
+    @Test
+    public void completedResultStaysDone() throws InterruptedException {
+        Result result = new Result(idCounter++);
+        result.set(3);
+        result.setState(ClientState.DONE);
+        result.setState(ClientState.SENT);
+        assertEquals(ClientState.DONE, result.getState());
+        assertEquals(3, result.get(), 0);
+        result.setState(ClientState.CLOSE);
+        assertEquals(ClientState.DONE, result.getState());
+        assertEquals(3, result.get(), 0);
+        Result closed = new Result(idCounter++);
+        closed.setState(ClientState.CLOSE);
+        assertTrue(Double.isNaN(closed.get()));
+    }
+
+    @Test
+    public void interruptedWaiterLeaves() throws InterruptedException {
+        Result result = new Result(idCounter++);
+        Thread.currentThread().interrupt();
+        try {
+            result.get();
+            fail();
+        } catch (InterruptedException expected) {
+        }
+        result.setState(ClientState.DONE);
+        assertTrue(result.isDone());
+    }
+
+    @Test
+    public void firstTerminalStateWins() throws InterruptedException {
+        Result result = new Result(idCounter++);
+        result.set(3);
+        result.setState(ClientState.DONE);
+        result.setState(ClientState.CANCEL);
+        assertFalse(result.isCancelled());
+        assertEquals(3, result.get(), 0);
+        Result cancelled = new Result(idCounter++);
+        cancelled.setState(ClientState.CANCEL);
+        cancelled.set(3);
+        cancelled.setState(ClientState.DONE);
+        assertTrue(cancelled.isCancelled());
+        assertTrue(Double.isNaN(cancelled.get()));
+    }
+
+    @Test
+    public void timedOutWaitersAreUnlinked() throws InterruptedException {
+        Result result = new Result(idCounter++);
+        for (int i = 0; i < 100; i++) {
+            try {
+                result.get(1, TimeUnit.MICROSECONDS);
+                fail();
+            } catch (TimeoutException expected) {
+            }
+        }
+        assertFalse(result.isWaiting());
+    }
+}
@@ -0,0 +1,109 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServerOperationTest {
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void assemblesChunksInLayoutOrder() {
+        ServerOperation serverOperation = new ServerOperation();
+        assertFalse(serverOperation.setChunkLayout(new int[]{1, 2}));
+        assertFalse(serverOperation.addChunk(2, 2, chunk(3)));
+        assertFalse(serverOperation.addChunk(1, 1, chunk(1)));
+        assertTrue(serverOperation.addChunk(2, 1, chunk(2)));
+        assertTrue(serverOperation.isAssembled());
+        assertEquals(2, serverOperation.getOrdersCount());
+        assertEquals(3, serverOperation.getReceivedOperands());
+        List<OperandBuffer> chunks = serverOperation.getChunks();
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(i + 1, chunks.get(i).getValue(0), 0);
+        }
+    }
+
+    @Test
+    public void chunksBeforeLayoutAreParked() {
+        ServerOperation serverOperation = new ServerOperation();
+        assertFalse(serverOperation.addChunk(1, 1, chunk(1)));
+        assertFalse(serverOperation.addChunk(2, 1, chunk(2)));
+        assertEquals(0, serverOperation.getReceivedOperands());
+        assertTrue(serverOperation.setChunkLayout(new int[]{1, 1}));
+        assertEquals(2, serverOperation.getReceivedOperands());
+    }
+
+    @Test
+    public void duplicateChunkIsIgnored() {
+        ServerOperation serverOperation = new ServerOperation();
+        serverOperation.setChunkLayout(new int[]{2});
+        assertFalse(serverOperation.addChunk(1, 1, chunk(1)));
+        assertFalse(serverOperation.addChunk(1, 1, chunk(1)));
+        assertEquals(1, serverOperation.getReceivedOperands());
+        assertFalse(serverOperation.isAssembled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownChunkIsRejected() {
+        ServerOperation serverOperation = new ServerOperation();
+        serverOperation.setChunkLayout(new int[]{1});
+        serverOperation.addChunk(1, 2, chunk(1));
+    }
+
+    @Test
+    public void completesExactlyOnceUnderContention() throws InterruptedException {
+        int chunksCount = 64;
+        for (int round = 0; round < 50; round++) {
+            ServerOperation serverOperation = new ServerOperation();
+            AtomicInteger completions = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 1; i <= chunksCount; i++) {
+                int subList = i;
+                threads.add(new Thread(() -> {
+                    awaitQuietly(start);
+                    if (serverOperation.addChunk(1, subList, chunk(subList))) {
+                        completions.incrementAndGet();
+                    }
+                }));
+            }
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                if (serverOperation.setChunkLayout(new int[]{chunksCount})) {
+                    completions.incrementAndGet();
+                }
+            }));
+            threads.forEach(Thread::start);
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(1, completions.get());
+            assertEquals(chunksCount, serverOperation.getReceivedOperands());
+        }
+    }
+
+    private static OperandBuffer chunk(double value) {
+        return OperandBuffer.of(Collections.singletonList(new Operand(value, OperandType.PLUS)));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -28,6 +29,7 @@ public class ServerTest {
     static Operand op5 = new Operand(OperandType.ABS, -3, OperandType.EQUALS);
 
     static List<Operand> operands = listOf(op1, op2, op3, op4, op5);
+    static ClientConfig unbatched = new ClientConfig().setAutoBatchMaxOperands(0);
 
     private static List<Operand> listOf(Operand... operands) {
         return new ArrayList<>(Arrays.asList(operands));
@@ -138,7 +140,7 @@ public class ServerTest {
         try {
             int currThreadsCountForSend = 4;
             Server server = runServer(1);
-            client = new Client(ports, ++serverPort, currThreadsCountForSend);
+            client = new Client(ports, ++serverPort, currThreadsCountForSend, unbatched);
             client.calculate(operands).get();
             Thread.sleep(1500);
             ServerOperation serverOperation = server.getOperationsForClient(client.getClientId()).values().iterator().next();
@@ -155,10 +157,10 @@ public class ServerTest {
         try {
             int currThreadsCountForSend = 4;
             Server server = runServer(1);
-            client = new Client(ports, ++serverPort, currThreadsCountForSend);
+            client = new Client(ports, ++serverPort, currThreadsCountForSend, unbatched);
             client.calculate(operands).get();
             ServerOperation serverOperation = server.getOperationsForClient(client.getClientId()).values().iterator().next();
-            assertEquals(serverOperation.getReceivingCalculationLocks().size(), Math.min(operands.size(), currThreadsCountForSend));
+            assertEquals(serverOperation.getOrdersCount(), Math.min(operands.size(), currThreadsCountForSend));
             client.close();
             server.close();
         } catch (Exception ignored){
@@ -256,4 +258,147 @@ public class ServerTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void multiReactorServer() throws InterruptedException {
+        for (ReactorBalancing balancing : ReactorBalancing.values()) {
+            ports = new int[]{++portsCounter, ++portsCounter, ++portsCounter};
+            Server server = new Server(ports, 4, new ServerConfig().setIoReactorsCount(3).setReactorBalancing(balancing));
+            server.start();
+            Thread.sleep(1000);
+            Client client1 = new Client(ports, 3);
+            Client client2 = new Client(ports, 3);
+            assertEquals(3.48278, client1.calculate(operands).get(), 0.001);
+            assertEquals(3.48278, client2.calculate(operands).get(), 0.001);
+            assertEquals(2, server.getClients().size());
+            client1.close();
+            client2.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void cheapExpressionsDoNotWaitBehindExpensiveOnes() throws InterruptedException {
+        ports = new int[]{++portsCounter, ++portsCounter, ++portsCounter};
+        ServerConfig config = new ServerConfig()
+                .setExpressionEvaluator(new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), 0, 500_000L, false))
+                .setEvaluationLanes(new long[]{1000}, new int[]{1, 1});
+        Server server = new Server(ports, 2, config);
+        server.start();
+        Thread.sleep(1000);
+        List<Operand> expensive = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expensive.addAll(operands.subList(0, 4));
+        }
+        expensive.add(op5);
+        Client client = new Client(ports, 3, unbatched);
+        Result expensiveResult = client.calculate(expensive);
+        Thread.sleep(200);
+        assertEquals(3.48278, client.calculate(operands).get(), 0.001);
+        assertFalse(expensiveResult.isDone());
+        expensiveResult.get();
+        List<PipelineStage.Metrics> metrics = server.getPipelineMetrics();
+        assertEquals("evaluate-lane-0", metrics.get(2).getName());
+        assertEquals(1, metrics.get(2).getProcessed());
+        assertEquals("evaluate-lane-1", metrics.get(3).getName());
+        assertEquals(1, metrics.get(3).getProcessed());
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void fullStagesPushBackWithoutLosingRequests() throws InterruptedException {
+        ports = new int[]{++portsCounter, ++portsCounter, ++portsCounter};
+        ServerConfig config = new ServerConfig()
+                .setExpressionEvaluator(new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), 2_000_000L, 0, false))
+                .setStageQueueCapacity(2);
+        Server server = new Server(ports, 2, config);
+        server.start();
+        Thread.sleep(1000);
+        Client batched = new Client(ports, 3);
+        Client unbatched = new Client(ports, 3, ServerTest.unbatched);
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            results.add(batched.calculate(operands));
+            results.add(unbatched.calculate(operands));
+        }
+        for (Result result : results) {
+            assertEquals(3.48278, result.get(), 0.001);
+        }
+        long rejected = 0;
+        for (PipelineStage.Metrics metrics : server.getPipelineMetrics()) {
+            assertTrue(metrics.getMaxQueueDepth() <= 2);
+            rejected += metrics.getRejected();
+        }
+        assertTrue(rejected > 0);
+        batched.close();
+        unbatched.close();
+        server.close();
+    }
+
+    @Test
+    public void compiledPlansDoNotBypassACustomEvaluator() throws InterruptedException {
+        ports = new int[]{++portsCounter, ++portsCounter, ++portsCounter};
+        ServerConfig config = new ServerConfig()
+                .setExpressionEvaluator(operands -> 7.0)
+                .setCompiledPlanCacheSize(16);
+        Server server = new Server(ports, 2, config);
+        server.start();
+        Thread.sleep(1000);
+        Client client = new Client(ports, 3, ServerTest.unbatched);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(7.0, client.calculate(operands).get(), 0);
+        }
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void columnarEvaluationDoesNotBypassACustomEvaluator() throws InterruptedException {
+        ports = new int[]{++portsCounter, ++portsCounter, ++portsCounter};
+        ServerConfig config = new ServerConfig()
+                .setExpressionEvaluator(operands -> 7.0)
+                .setColumnarEvaluationThreshold(1);
+        Server server = new Server(ports, 2, config);
+        server.start();
+        Thread.sleep(1000);
+        Client client = new Client(ports, 3, ServerTest.unbatched);
+        assertEquals(7.0, client.calculate(operands).get(), 0);
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void fairQueuingKeepsQuietClientDelayBounded() throws InterruptedException {
+        ports = new int[]{++portsCounter, ++portsCounter, ++portsCounter};
+        ServerConfig config = new ServerConfig()
+                .setExpressionEvaluator(new SyntheticCostEvaluator(new PrimitiveExpressionEvaluator(), 2_000_000L, 0, false))
+                .setFairQueuingQuantum(64);
+        Server server = new Server(ports, 1, config);
+        server.start();
+        Thread.sleep(1000);
+        Client noisy = new Client(ports, 3, unbatched);
+        Client quiet = new Client(ports, 3, unbatched);
+        List<Result> noisyResults = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            noisyResults.add(noisy.calculate(operands));
+        }
+        Thread.sleep(100);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(3.48278, quiet.calculate(operands).get(), 0.001);
+        }
+        assertFalse(noisyResults.get(noisyResults.size() - 1).isDone());
+        for (Result result : noisyResults) {
+            assertEquals(3.48278, result.get(), 0.001);
+        }
+        Map<Integer, DeficitRoundRobinQueue.FlowMetrics> metrics = server.getClientQueueingMetrics();
+        DeficitRoundRobinQueue.FlowMetrics noisyMetrics = metrics.get(noisy.getClientId());
+        DeficitRoundRobinQueue.FlowMetrics quietMetrics = metrics.get(quiet.getClientId());
+        assertEquals(200, noisyMetrics.getDequeued());
+        assertEquals(5, quietMetrics.getDequeued());
+        assertTrue(quietMetrics.getMaxDelayNanos() * 4 < noisyMetrics.getMaxDelayNanos());
+        noisy.close();
+        quiet.close();
+        server.close();
+    }
+
+}
@@ -0,0 +1,95 @@
+package nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class UnaryMemoTableTest {
+
+    private static final OperandType[] unaryTypes = {OperandType.SIN, OperandType.COS, OperandType.TAN,
+            OperandType.EXP, OperandType.SQUARE, OperandType.LN};
+
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void repeatedPairsHitTheTable() {
+        UnaryMemoTable table = new UnaryMemoTable(64);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Math.sin(0.5), table.apply(OperandType.SIN, 0.5), 0);
+            assertEquals(Math.cos(0.5), table.apply(OperandType.COS, 0.5), 0);
+        }
+        UnaryMemoTable.Metrics metrics = table.getMetrics();
+        assertEquals(18, metrics.getHits());
+        assertEquals(2, metrics.getMisses());
+        assertEquals(0.9, metrics.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void cheapKernelsAreNotMemoized() {
+        UnaryMemoTable table = new UnaryMemoTable(16);
+        assertEquals(3, table.apply(OperandType.ABS, -3), 0);
+        assertEquals(-3, table.apply(OperandType.EMPTY, -3), 0);
+        assertEquals(0, table.getMetrics().getHits() + table.getMetrics().getMisses());
+    }
+
+    @Test
+    public void distinguishesSignedZeroAndRoundsCapacityUp() {
+        UnaryMemoTable table = new UnaryMemoTable(3);
+        assertEquals(4, table.capacity());
+        assertEquals(Double.NEGATIVE_INFINITY, table.apply(OperandType.LN, 0.0), 0);
+        assertEquals(Double.NaN, table.apply(OperandType.SQUARE, -1.0), 0);
+        assertEquals(-0.0, table.apply(OperandType.SIN, -0.0), 0);
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(table.apply(OperandType.SIN, -0.0)));
+        assertEquals(Double.doubleToRawLongBits(0.0), Double.doubleToRawLongBits(table.apply(OperandType.SIN, 0.0)));
+    }
+
+    @Test
+    public void concurrentLookupsInSmallTableStayCorrect() throws InterruptedException {
+        UnaryMemoTable table = new UnaryMemoTable(8);
+        AtomicBoolean wrong = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 200_000; i++) {
+                    OperandType operation = unaryTypes[random.nextInt(unaryTypes.length)];
+                    double a = random.nextInt(32) / 8.0;
+                    if (Double.compare(table.apply(operation, a), OperandsParser.calculateUnaryPart(operation, a)) != 0) {
+                        wrong.set(true);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(wrong.get());
+    }
+
+    @Test
+    public void evaluatorsUseTheTable() {
+        UnaryMemoTable table = new UnaryMemoTable(64);
+        OperandBuffer operands = OperandBuffer.of(Arrays.asList(
+                new Operand(OperandType.SIN, 1, OperandType.PLUS),
+                new Operand(OperandType.EXP, 2, OperandType.EQUALS)));
+        double expected = Math.sin(1) + Math.exp(2);
+        assertEquals(expected, new PrimitiveExpressionEvaluator(table).evaluate(operands), 0);
+        assertEquals(expected, new PrimitiveExpressionEvaluator(table).evaluate(operands), 0);
+        CompiledExpressionEvaluator compiled = new CompiledExpressionEvaluator(4, 8, 1, new PrimitiveExpressionEvaluator(), table);
+        assertEquals(expected, compiled.evaluate(operands), 0);
+        assertEquals(1, compiled.getCompiledHits());
+        assertEquals(4, table.getMetrics().getHits());
+    }
+}